@@ -0,0 +1,253 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of JSON object members, optimized for objects with few members. Up to
+ * {@link #THRESHOLD} members are held in a single array of alternating keys and values, in
+ * insertion order, and are found by linear scan; there is no hash table and no entry object
+ * per member. Once the map grows beyond the threshold, it is promoted to a
+ * {@link LinkedHashMap}, and stays promoted.
+ * <p>
+ * The iteration order of the map is the order in which keys were inserted. This map permits
+ * {@code null} values, and is not thread-safe.
+ */
+public final class CompactMap extends AbstractMap<String, Object> {
+
+    /** The maximum number of members held before the map is promoted to a hashed form. */
+    public static final int THRESHOLD = 8;
+
+    /** Alternating keys and values, or {@code null} if the map has been promoted. */
+    private Object[] table;
+
+    /** The number of members in the table. */
+    private int size;
+
+    /** The hashed form of the map, or {@code null} if the map has not been promoted. */
+    private LinkedHashMap<String, Object> hashed;
+
+    /** The number of times the table has been structurally modified. */
+    private int modCount;
+
+    /**
+     * Constructs an empty map.
+     */
+    public CompactMap() {
+        table = new Object[THRESHOLD * 2];
+    }
+
+    /**
+     * Constructs a map containing the members of the specified map, in the order they are
+     * returned by its iterator.
+     *
+     * @param map the map whose members are to be placed in this map.
+     */
+    public CompactMap(Map<String, ? extends Object> map) {
+        if (map.size() > THRESHOLD) {
+            hashed = new LinkedHashMap<String, Object>(map);
+        } else {
+            table = new Object[THRESHOLD * 2];
+            putAll(map);
+        }
+    }
+
+    /**
+     * Returns the position of the specified key in the table, or {@code -1} if not found.
+     */
+    private int indexOf(Object key) {
+        for (int n = 0; n < size * 2; n += 2) {
+            Object k = table[n];
+            if (k == key || (key != null && key.equals(k))) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the member at the specified position in the table, preserving the order of
+     * the remaining members.
+     */
+    private Object removeAt(int index) {
+        Object result = table[index + 1];
+        int last = --size * 2;
+        System.arraycopy(table, index + 2, table, index, last - index);
+        table[last] = null;
+        table[last + 1] = null;
+        modCount++;
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return (hashed != null ? hashed.size() : size);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (hashed != null ? hashed.containsKey(key) : indexOf(key) >= 0);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (hashed != null) {
+            return hashed.get(key);
+        }
+        int n = indexOf(key);
+        return (n >= 0 ? table[n + 1] : null);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (hashed != null) {
+            return hashed.put(key, value);
+        }
+        int n = indexOf(key);
+        if (n >= 0) {
+            Object result = table[n + 1];
+            table[n + 1] = value;
+            return result;
+        }
+        if (size == THRESHOLD) { // promote
+            hashed = new LinkedHashMap<String, Object>(THRESHOLD * 4);
+            for (n = 0; n < size * 2; n += 2) {
+                hashed.put((String)table[n], table[n + 1]);
+            }
+            table = null;
+            size = 0;
+            modCount++;
+            return hashed.put(key, value);
+        }
+        table[size * 2] = key;
+        table[size * 2 + 1] = value;
+        size++;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (hashed != null) {
+            return hashed.remove(key);
+        }
+        int n = indexOf(key);
+        return (n >= 0 ? removeAt(n) : null);
+    }
+
+    @Override
+    public void clear() {
+        if (hashed != null) {
+            hashed.clear();
+        } else {
+            for (int n = 0; n < size * 2; n++) {
+                table[n] = null;
+            }
+            size = 0;
+            modCount++;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override public int size() {
+                return CompactMap.this.size();
+            }
+            @Override public void clear() {
+                CompactMap.this.clear();
+            }
+            @Override public Iterator<Map.Entry<String, Object>> iterator() {
+                return (hashed != null ? hashed.entrySet().iterator() : new EntryIterator());
+            }
+        };
+    }
+
+    /**
+     * Iterates over the members held in the table.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        /** The position in the table of the next member to return. */
+        private int cursor;
+
+        /** The position in the table of the last member returned, or {@code -1}. */
+        private int last = -1;
+
+        /** The modification count that the table is expected to have. */
+        private int expected = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size * 2;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+            if (cursor >= size * 2) {
+                throw new NoSuchElementException();
+            }
+            last = cursor;
+            cursor += 2;
+            return new Entry((String)table[last], table[last + 1]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expected) {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(last);
+            expected = modCount;
+            cursor = last;
+            last = -1;
+        }
+    }
+
+    /**
+     * A member of the map. Setting its value writes through to the map.
+     */
+    private final class Entry extends SimpleEntry<String, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        Entry(String key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Creates the {@code Map} and {@code List} objects that hold JSON objects and arrays created
+ * by this library, such as by {@link JsonValue#copy()} and {@link JsonValue#clone()}.
+ * <p>
+ * The factory in use is returned by {@link #getDefault()}. Unless one is set explicitly with
+ * {@link #setDefault}, it is the first implementation registered as a service provider
+ * through {@link ServiceLoader}, in a
+ * {@code META-INF/services/org.forgerock.json.fluent.ContainerFactory} resource, or
+ * {@link #COMPACT} if none is registered. Containers must permit {@code null}
+ * values, and their map entries must support {@link Map.Entry#setValue}.
+ */
+public abstract class ContainerFactory {
+
+    /**
+     * Holds containers in {@link LinkedHashMap} and {@link ArrayList} objects, preserving the
+     * order of object members.
+     */
+    public static final ContainerFactory ORDERED = new ContainerFactory() {
+        @Override public Map<String, Object> newMap(int size) {
+            return new LinkedHashMap<String, Object>(Math.max(size * 4 / 3 + 1, 16));
+        }
+        @Override public List<Object> newList(int size) {
+            return new ArrayList<Object>(size);
+        }
+    };
+
+    /**
+     * Holds small objects in a {@link CompactMap}, and large objects in a
+     * {@link LinkedHashMap}; holds small arrays in an {@link ArrayList}, and large arrays in
+     * a {@link SegmentedList}. Member order is preserved. This is the default.
+     */
+    public static final ContainerFactory COMPACT = new ContainerFactory() {
+        @Override public Map<String, Object> newMap(int size) {
+            return (size <= CompactMap.THRESHOLD ? new CompactMap() : ORDERED.newMap(size));
+        }
+        @Override public List<Object> newList(int size) {
+            return (size >= SEGMENTED_SIZE ? new SegmentedList<Object>() : ORDERED.newList(size));
+        }
+    };
+
+    /**
+     * Holds containers in synchronized {@link LinkedHashMap} and {@link ArrayList} objects,
+     * for structures that are modified by multiple threads. As with any synchronized
+     * collection, iteration must be synchronized on the container by the caller. The
+     * {@code java.util.concurrent} maps are not used, as they do not permit JSON
+     * {@code null} values.
+     */
+    public static final ContainerFactory SYNCHRONIZED = new ContainerFactory() {
+        @Override public Map<String, Object> newMap(int size) {
+            return Collections.synchronizedMap(ORDERED.newMap(size));
+        }
+        @Override public List<Object> newList(int size) {
+            return Collections.synchronizedList(ORDERED.newList(size));
+        }
+    };
+
+    /** The size at and above which the compact factory holds arrays in a segmented list. */
+    private static final int SEGMENTED_SIZE = 4096;
+
+    /** The factory in use, or {@code null} if not yet determined. */
+    private static volatile ContainerFactory instance;
+
+    /**
+     * Returns the factory used to create containers.
+     */
+    public static ContainerFactory getDefault() {
+        ContainerFactory result = instance;
+        if (result == null) {
+            synchronized (ContainerFactory.class) {
+                result = instance;
+                if (result == null) {
+                    Iterator<ContainerFactory> i =
+                     ServiceLoader.load(ContainerFactory.class).iterator();
+                    result = (i.hasNext() ? i.next() : COMPACT);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the factory used to create containers. Containers that were already created are
+     * not affected.
+     *
+     * @param factory the factory to use, or {@code null} to restore the default.
+     */
+    public static void setDefault(ContainerFactory factory) {
+        instance = factory;
+    }
+
+    /**
+     * Returns a new, empty {@code Map} to hold a JSON object.
+     *
+     * @param size the expected number of members.
+     * @return the new map.
+     */
+    public abstract Map<String, Object> newMap(int size);
+
+    /**
+     * Returns a new, empty {@code List} to hold a JSON array.
+     *
+     * @param size the expected number of elements.
+     * @return the new list.
+     */
+    public abstract List<Object> newList(int size);
+
+    /**
+     * Returns a new {@code Map} containing the members of the specified map, in the order
+     * they are returned by its iterator.
+     *
+     * @param map the map whose members are to be copied.
+     * @return the new map.
+     */
+    public Map<String, Object> copyOf(Map<String, ? extends Object> map) {
+        Map<String, Object> result = newMap(map.size());
+        result.putAll(map);
+        return result;
+    }
+
+    /**
+     * Returns a new {@code List} containing the elements of the specified list, in order.
+     *
+     * @param list the list whose elements are to be copied.
+     * @return the new list.
+     */
+    public List<Object> copyOf(List<? extends Object> list) {
+        List<Object> result = newList(list.size());
+        result.addAll(list);
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list that shares the structure of a source list until it is first modified. Upon the
+ * first modification, the source list is copied, and all subsequent operations are performed
+ * on the copy. Member maps and lists are exposed as copy-on-write views themselves, so
+ * modifications made at any depth never affect the source structure.
+ * <p>
+ * The source list must not be modified while this list is in use. This list may be read
+ * concurrently by multiple threads, but must not be modified concurrently with any other
+ * access.
+ *
+ * @see CopyOnWriteMap
+ */
+class CopyOnWriteList extends AbstractList<Object> implements RandomAccess {
+
+    /** The shared list, which is never modified through this list. */
+    private final List<Object> source;
+
+    /** The private copy of the source list; {@code null} until first modification. */
+    private List<Object> target;
+
+    /** Copy-on-write views of member containers, exposed prior to first modification. */
+    private HashMap<Integer, Object> children;
+
+    /**
+     * Constructs a copy-on-write list, sharing the specified source list.
+     *
+     * @param source the list to share until first modification.
+     */
+    public CopyOnWriteList(List<Object> source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the copy-on-write view of a member container, creating it if necessary. Only
+     * called prior to first modification. Synchronized, as reads create views, and reads
+     * may be concurrent.
+     */
+    private synchronized Object child(int index, Object value) {
+        if (children == null) {
+            children = new HashMap<Integer, Object>();
+        }
+        Object result = children.get(index);
+        if (result == null) {
+            result = CopyOnWriteMap.wrap(value);
+            children.put(index, result);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the source list, if not already copied. Member containers are replaced with
+     * copy-on-write views, reusing any that were already exposed.
+     */
+    private List<Object> target() {
+        if (target == null) {
+            List<Object> list = ContainerFactory.getDefault().copyOf(source);
+            for (int n = 0; n < list.size(); n++) {
+                if (CopyOnWriteMap.isContainer(list.get(n))) {
+                    list.set(n, child(n, list.get(n)));
+                }
+            }
+            children = null;
+            target = list;
+        }
+        return target;
+    }
+
+    @Override
+    public int size() {
+        return (target != null ? target : source).size();
+    }
+
+    @Override
+    public Object get(int index) {
+        if (target != null) {
+            return target.get(index);
+        }
+        Object result = source.get(index);
+        if (CopyOnWriteMap.isContainer(result)) {
+            result = child(index, result);
+        }
+        return result;
+    }
+
+    @Override
+    public Object set(int index, Object element) {
+        return target().set(index, element);
+    }
+
+    @Override
+    public void add(int index, Object element) {
+        target().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public Object remove(int index) {
+        Object result = target().remove(index);
+        modCount++;
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        target = ContainerFactory.getDefault().newList(0);
+        children = null;
+        modCount++;
+    }
+}
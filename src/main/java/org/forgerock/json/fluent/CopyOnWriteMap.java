@@ -0,0 +1,195 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map that shares the structure of a source map until it is first modified. Upon the
+ * first modification, the source map is copied, and all subsequent operations are performed
+ * on the copy. Member maps and lists are exposed as copy-on-write views themselves, so
+ * modifications made at any depth never affect the source structure.
+ * <p>
+ * The source map must not be modified while this map is in use. This map may be read
+ * concurrently by multiple threads, but must not be modified concurrently with any other
+ * access.
+ *
+ * @see CopyOnWriteList
+ */
+class CopyOnWriteMap extends AbstractMap<String, Object> {
+
+    /** The shared map, which is never modified through this map. */
+    private final Map<String, Object> source;
+
+    /** The private copy of the source map; {@code null} until first modification. */
+    private Map<String, Object> target;
+
+    /** Copy-on-write views of member containers, exposed prior to first modification. */
+    private HashMap<String, Object> children;
+
+    /**
+     * Constructs a copy-on-write map, sharing the specified source map.
+     *
+     * @param source the map to share until first modification.
+     */
+    public CopyOnWriteMap(Map<String, Object> source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns a copy-on-write view of the specified object if it is a {@code Map} or
+     * {@code List}, otherwise the object itself.
+     *
+     * @param object the object to wrap.
+     * @return the copy-on-write view, or the object itself.
+     */
+    @SuppressWarnings("unchecked")
+    static Object wrap(Object object) {
+        if (object instanceof Map) {
+            return new CopyOnWriteMap((Map)object);
+        } else if (object instanceof List) {
+            return new CopyOnWriteList((List)object);
+        } else {
+            return object;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the specified object must be exposed as a copy-on-write view.
+     */
+    static boolean isContainer(Object object) {
+        return (object instanceof Map || object instanceof List);
+    }
+
+    /**
+     * Returns the copy-on-write view of a member container, creating it if necessary. Only
+     * called prior to first modification. Synchronized, as reads create views, and reads
+     * may be concurrent.
+     */
+    private synchronized Object child(String key, Object value) {
+        if (children == null) {
+            children = new HashMap<String, Object>();
+        }
+        Object result = children.get(key);
+        if (result == null) {
+            result = wrap(value);
+            children.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Copies the source map, if not already copied. Member containers are replaced with
+     * copy-on-write views, reusing any that were already exposed.
+     */
+    private Map<String, Object> target() {
+        if (target == null) {
+            Map<String, Object> map = ContainerFactory.getDefault().copyOf(source);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (isContainer(entry.getValue())) {
+                    entry.setValue(child(entry.getKey(), entry.getValue()));
+                }
+            }
+            children = null;
+            target = map;
+        }
+        return target;
+    }
+
+    @Override
+    public int size() {
+        return (target != null ? target : source).size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (target != null ? target : source).containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (target != null) {
+            return target.get(key);
+        }
+        Object result = source.get(key);
+        if (key instanceof String && isContainer(result)) {
+            result = child((String)key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return target().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return (containsKey(key) ? target().remove(key) : null);
+    }
+
+    @Override
+    public void clear() {
+        target = ContainerFactory.getDefault().newMap(0);
+        children = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override public int size() {
+                return CopyOnWriteMap.this.size();
+            }
+            @Override public Iterator<Map.Entry<String, Object>> iterator() {
+                if (target != null) {
+                    return target.entrySet().iterator();
+                }
+                final Iterator<String> i = source.keySet().iterator();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    String last;
+                    @Override public boolean hasNext() {
+                        return i.hasNext();
+                    }
+                    @Override public Map.Entry<String, Object> next() {
+                        final String key = (last = i.next());
+                        return new AbstractMap.SimpleEntry<String, Object>(key, get(key)) {
+                            static final long serialVersionUID = 1L;
+                            @Override public Object setValue(Object value) {
+                                super.setValue(value);
+                                return put(key, value);
+                            }
+                        };
+                    }
+                    @Override public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        target().remove(last); // source iteration unaffected
+                        last = null;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,631 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A compiled predicate on the fields of JSON values, for filtering the elements of lists.
+ * Filters are composed from comparisons of fields, identified by pointers relative to the
+ * filtered value, with {@link #and}, {@link #or} and {@link #not}. For example:
+ * <pre>
+ * JsonFilter filter = JsonFilter.and(
+ *  JsonFilter.equalTo(new JsonPointer("/active"), true),
+ *  JsonFilter.greaterThan(new JsonPointer("/age"), 30));
+ * List&lt;JsonValue&gt; result = filter.filter(users);</pre>
+ * <p>
+ * Each distinct field pointer in a filter is resolved at most once per value, and only when
+ * first needed; conjunctions and disjunctions stop evaluating as soon as their result is
+ * known. Values are tested in their underlying Java objects, without wrapping members in
+ * JSON values. Numbers are compared by value, regardless of type; integral numbers are
+ * compared as {@code long}s and other numbers as {@code double}s. Strings are compared
+ * lexicographically. Other values, and values of different types, are only equal or unequal;
+ * ordering comparisons of them are not satisfied. A comparison of a field that does not
+ * exist is not satisfied. Transformers are not applied.
+ * <p>
+ * Filters are immutable, and can be used concurrently by multiple threads.
+ */
+public final class JsonFilter {
+
+    /** The minimum number of elements in each range of a list filtered in parallel. */
+    private static final int MIN_RANGE = 256;
+
+    /** A field value that has not yet been resolved. */
+    private static final Object UNRESOLVED = new Object();
+
+    /** A field value that does not exist. */
+    private static final Object UNDEFINED = new Object();
+
+    /** The equal to operator. */
+    private static final int EQ = 0;
+
+    /** The not equal to operator. */
+    private static final int NE = 1;
+
+    /** The less than operator. */
+    private static final int LT = 2;
+
+    /** The less than or equal to operator. */
+    private static final int LE = 3;
+
+    /** The greater than operator. */
+    private static final int GT = 4;
+
+    /** The greater than or equal to operator. */
+    private static final int GE = 5;
+
+    /** The expression of the filter. */
+    private final Expression expression;
+
+    /** The reference tokens of the distinct field pointers, indexed by slot. */
+    private final String[][] fields;
+
+    /** The compiled expression, which refers to fields by slot. */
+    private final Test test;
+
+    /**
+     * Constructs and compiles a filter.
+     */
+    private JsonFilter(Expression expression) {
+        this.expression = expression;
+        HashMap<JsonPointer, Integer> slots = new HashMap<JsonPointer, Integer>();
+        this.test = expression.compile(slots);
+        fields = new String[slots.size()][];
+        for (Map.Entry<JsonPointer, Integer> entry : slots.entrySet()) {
+            fields[entry.getValue().intValue()] = entry.getKey().toArray();
+        }
+    }
+
+    // ----- factories ----------
+
+    /**
+     * Returns a filter that is satisfied if the specified field exists.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @return the filter.
+     */
+    public static JsonFilter present(JsonPointer field) {
+        return new JsonFilter(new Comparison(field, -1, null));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field is equal to a value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter equalTo(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, EQ, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field exists, and is not equal to a
+     * value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter notEqualTo(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, NE, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field is less than a value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter lessThan(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, LT, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field is less than or equal to a
+     * value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter lessThanOrEqualTo(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, LE, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field is greater than a value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter greaterThan(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, GT, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified field is greater than or equal to
+     * a value.
+     *
+     * @param field the pointer of the field, relative to the filtered value.
+     * @param value the value to compare the field with.
+     * @return the filter.
+     */
+    public static JsonFilter greaterThanOrEqualTo(JsonPointer field, Object value) {
+        return new JsonFilter(new Comparison(field, GE, value));
+    }
+
+    /**
+     * Returns a filter that is satisfied if all of the specified filters are satisfied. The
+     * filters are evaluated in order, until one is not satisfied.
+     *
+     * @param filters the filters to combine.
+     * @return the filter.
+     */
+    public static JsonFilter and(JsonFilter... filters) {
+        return new JsonFilter(new Junction(true, expressions(filters)));
+    }
+
+    /**
+     * Returns a filter that is satisfied if any of the specified filters is satisfied. The
+     * filters are evaluated in order, until one is satisfied.
+     *
+     * @param filters the filters to combine.
+     * @return the filter.
+     */
+    public static JsonFilter or(JsonFilter... filters) {
+        return new JsonFilter(new Junction(false, expressions(filters)));
+    }
+
+    /**
+     * Returns a filter that is satisfied if the specified filter is not satisfied.
+     *
+     * @param filter the filter to negate.
+     * @return the filter.
+     */
+    public static JsonFilter not(JsonFilter filter) {
+        return new JsonFilter(new Negation(filter.expression));
+    }
+
+    private static Expression[] expressions(JsonFilter[] filters) {
+        Expression[] result = new Expression[filters.length];
+        for (int n = 0; n < filters.length; n++) {
+            result[n] = filters[n].expression;
+        }
+        return result;
+    }
+
+    // ----- evaluation ----------
+
+    /**
+     * Returns {@code true} if the specified JSON value satisfies this filter.
+     *
+     * @param value the value to test.
+     * @return {@code true} if the value satisfies the filter.
+     */
+    public boolean matches(JsonValue value) {
+        return new Evaluation().matches(value.getObject());
+    }
+
+    /**
+     * Returns the elements of the specified list that satisfy this filter, in list order.
+     *
+     * @param list the list value to filter.
+     * @return the elements that satisfy the filter.
+     * @throws JsonValueException if the value is not a {@code List}.
+     */
+    public List<JsonValue> filter(JsonValue list) throws JsonValueException {
+        return filter(list, null);
+    }
+
+    /**
+     * Returns the elements of the specified list that satisfy this filter, in list order. If
+     * an executor service is specified, a large list is split into ranges of elements, which
+     * are filtered by tasks that never wait on each other, so any executor service, such as
+     * a {@code ForkJoinPool}, can be used. The list must not be modified while it is being
+     * filtered.
+     *
+     * @param list the list value to filter.
+     * @param executor the executor service to filter ranges of elements, or {@code null} to
+     * filter sequentially.
+     * @return the elements that satisfy the filter.
+     * @throws JsonValueException if the value is not a {@code List}.
+     * @throws JsonException if the calling thread was interrupted.
+     */
+    public List<JsonValue> filter(JsonValue list, ExecutorService executor)
+    throws JsonException {
+        if (!list.isList()) {
+            throw new JsonValueException(list, "Expecting a List");
+        }
+        final List<Object> elements = list.asList();
+        int size = elements.size();
+        int pieces = 1;
+        if (executor != null) {
+            pieces = Math.min(Runtime.getRuntime().availableProcessors() * 4, size / MIN_RANGE);
+        }
+        ArrayList<JsonValue> result = new ArrayList<JsonValue>();
+        JsonPointer pointer = list.getPointer();
+        if (pieces <= 1) {
+            assemble(elements, pointer, new Evaluation().filter(elements, 0, size), result);
+            return result;
+        }
+        ArrayList<Future<int[]>> futures = new ArrayList<Future<int[]>>(pieces);
+        try {
+            for (int n = 0; n < pieces; n++) {
+                final int from = (int)((long)size * n / pieces);
+                final int to = (int)((long)size * (n + 1) / pieces);
+                futures.add(executor.submit(new Callable<int[]>() {
+                    @Override public int[] call() {
+                        return new Evaluation().filter(elements, from, to);
+                    }
+                }));
+            }
+            for (Future<int[]> future : futures) {
+                assemble(elements, pointer, future.get(), result);
+            }
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new JsonException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new JsonException(ie);
+        } finally {
+            for (Future<int[]> future : futures) {
+                future.cancel(true); // no effect on completed tasks
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the elements with the specified indexes to a list of results.
+     *
+     * @param indexes the matching indexes, terminated by {@code -1} or the end of the array.
+     */
+    private static void assemble(List<Object> elements, JsonPointer pointer, int[] indexes,
+    List<JsonValue> result) {
+        for (int index : indexes) {
+            if (index < 0) {
+                break;
+            }
+            result.add(new JsonValue(elements.get(index), pointer.child(index)));
+        }
+    }
+
+    /**
+     * The evaluation of the filter against values, by a single thread. The field values of
+     * the value being tested are held in slots, which are reused between values.
+     */
+    private final class Evaluation {
+
+        /** The resolved field values of the value being tested. */
+        final Object[] values = new Object[fields.length];
+
+        /**
+         * Returns the indexes of the elements in the specified range that satisfy the filter,
+         * terminated by {@code -1} if fewer than the array length.
+         */
+        int[] filter(List<Object> elements, int from, int to) {
+            int[] result = new int[Math.min(to - from, 16)];
+            int count = 0;
+            for (int n = from; n < to; n++) {
+                if (matches(elements.get(n))) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, Math.min(to - from, count * 2));
+                    }
+                    result[count++] = n;
+                }
+            }
+            if (count < result.length) {
+                result[count] = -1;
+            }
+            return result;
+        }
+
+        boolean matches(Object object) {
+            Arrays.fill(values, UNRESOLVED);
+            return test.test(object, this);
+        }
+
+        /**
+         * Returns the value of the field in the specified slot, resolving it if necessary.
+         */
+        Object field(Object object, int slot) {
+            Object value = values[slot];
+            if (value == UNRESOLVED) {
+                value = resolve(object, fields[slot]);
+                values[slot] = value;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Returns the object identified by the specified reference tokens, or {@link #UNDEFINED}.
+     */
+    private static Object resolve(Object object, String[] tokens) {
+        for (String token : tokens) {
+            if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)object;
+                Object member = map.get(token);
+                if (member == null && !map.containsKey(token)) {
+                    return UNDEFINED;
+                }
+                object = member;
+            } else if (object instanceof List) {
+                List<?> list = (List<?>)object;
+                int index;
+                try {
+                    index = Integer.parseInt(token);
+                } catch (NumberFormatException nfe) {
+                    return UNDEFINED;
+                }
+                if (index < 0 || index >= list.size()) {
+                    return UNDEFINED;
+                }
+                object = list.get(index);
+            } else {
+                return UNDEFINED;
+            }
+        }
+        return object;
+    }
+
+    // ----- expressions ----------
+
+    /**
+     * An uncompiled filter expression, which refers to fields by pointer.
+     */
+    private abstract static class Expression {
+
+        /**
+         * Compiles the expression, assigning a slot to each distinct field pointer.
+         */
+        abstract Test compile(Map<JsonPointer, Integer> slots);
+    }
+
+    /**
+     * A compiled filter expression, which refers to fields by slot.
+     */
+    private abstract static class Test {
+
+        abstract boolean test(Object object, Evaluation evaluation);
+    }
+
+    private static final class Comparison extends Expression {
+
+        final JsonPointer field;
+
+        /** The operator, or {@code -1} to test for existence. */
+        final int operator;
+
+        final Object value;
+
+        Comparison(JsonPointer field, int operator, Object value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        Test compile(Map<JsonPointer, Integer> slots) {
+            Integer slot = slots.get(field);
+            if (slot == null) {
+                slot = Integer.valueOf(slots.size());
+                slots.put(field, slot);
+            }
+            if (operator < 0) {
+                return new Present(slot.intValue());
+            } else if (value instanceof Number && JsonQuery.integral((Number)value)) {
+                return new LongComparison(slot.intValue(), operator, ((Number)value).longValue());
+            } else if (value instanceof Number) {
+                return new DoubleComparison(slot.intValue(), operator,
+                 ((Number)value).doubleValue());
+            }
+            return new ObjectComparison(slot.intValue(), operator, value);
+        }
+    }
+
+    private static final class Junction extends Expression {
+
+        /** {@code true} for a conjunction, {@code false} for a disjunction. */
+        final boolean and;
+
+        final Expression[] operands;
+
+        Junction(boolean and, Expression[] operands) {
+            this.and = and;
+            this.operands = operands;
+        }
+
+        @Override
+        Test compile(Map<JsonPointer, Integer> slots) {
+            final Test[] tests = new Test[operands.length];
+            for (int n = 0; n < operands.length; n++) {
+                tests[n] = operands[n].compile(slots); // recursion
+            }
+            return new Test() {
+                @Override boolean test(Object object, Evaluation evaluation) {
+                    for (Test test : tests) {
+                        if (test.test(object, evaluation) != and) {
+                            return !and;
+                        }
+                    }
+                    return and;
+                }
+            };
+        }
+    }
+
+    private static final class Negation extends Expression {
+
+        final Expression operand;
+
+        Negation(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        Test compile(Map<JsonPointer, Integer> slots) {
+            final Test test = operand.compile(slots); // recursion
+            return new Test() {
+                @Override boolean test(Object object, Evaluation evaluation) {
+                    return !test.test(object, evaluation);
+                }
+            };
+        }
+    }
+
+    // ----- compiled comparisons ----------
+
+    private static final class Present extends Test {
+
+        final int slot;
+
+        Present(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        boolean test(Object object, Evaluation evaluation) {
+            return evaluation.field(object, slot) != UNDEFINED;
+        }
+    }
+
+    /**
+     * Compares a field with an integral number.
+     */
+    private static final class LongComparison extends Test {
+
+        final int slot;
+
+        final int operator;
+
+        final long value;
+
+        LongComparison(int slot, int operator, long value) {
+            this.slot = slot;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Object object, Evaluation evaluation) {
+            Object field = evaluation.field(object, slot);
+            if (!(field instanceof Number)) {
+                return (operator == NE && field != UNDEFINED);
+            }
+            Number number = (Number)field;
+            if (JsonQuery.integral(number)) {
+                long l = number.longValue();
+                return satisfies(operator, l < value ? -1 : (l == value ? 0 : 1));
+            }
+            return satisfies(operator, compare(number.doubleValue(), value));
+        }
+    }
+
+    /**
+     * Compares a field with a non-integral number.
+     */
+    private static final class DoubleComparison extends Test {
+
+        final int slot;
+
+        final int operator;
+
+        final double value;
+
+        DoubleComparison(int slot, int operator, double value) {
+            this.slot = slot;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Object object, Evaluation evaluation) {
+            Object field = evaluation.field(object, slot);
+            if (!(field instanceof Number)) {
+                return (operator == NE && field != UNDEFINED);
+            }
+            return satisfies(operator, compare(((Number)field).doubleValue(), value));
+        }
+    }
+
+    /**
+     * Compares a field with a string, or any other value.
+     */
+    private static final class ObjectComparison extends Test {
+
+        final int slot;
+
+        final int operator;
+
+        final Object value;
+
+        ObjectComparison(int slot, int operator, Object value) {
+            this.slot = slot;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Object object, Evaluation evaluation) {
+            Object field = evaluation.field(object, slot);
+            if (field == UNDEFINED) {
+                return false;
+            }
+            return satisfies(operator, JsonQuery.compare(field, value));
+        }
+    }
+
+    /**
+     * Returns {@code true} if the result of a comparison satisfies an operator.
+     */
+    private static boolean satisfies(int operator, int result) {
+        switch (operator) {
+        case EQ: return (result == 0);
+        case NE: return (result != 0);
+        case LT: return (result != JsonQuery.UNORDERED && result < 0);
+        case LE: return (result != JsonQuery.UNORDERED && result <= 0);
+        case GT: return (result > 0);
+        default: return (result >= 0);
+        }
+    }
+
+    /**
+     * Compares two doubles, returning {@link JsonQuery#UNORDERED} if either is not a number.
+     */
+    private static int compare(double d1, double d2) {
+        return (d1 < d2 ? -1 : (d1 == d2 ? 0 : (d1 > d2 ? 1 : JsonQuery.UNORDERED)));
+    }
+}
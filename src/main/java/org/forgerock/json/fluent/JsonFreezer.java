@@ -0,0 +1,201 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Freezes JSON values into immutable {@link PersistentMap} and {@link PersistentList}
+ * structures, sharing a single instance between all equal subtrees. Subtrees are frozen
+ * bottom-up, so by the time a container is frozen, its member containers have already been
+ * replaced by their shared instances; two containers are then equal only if their scalar
+ * members are equal and their member containers are identical, which is checked without
+ * descending into the structure.
+ * <p>
+ * Shared instances are retained by the freezer, and are shared between all of the values it
+ * freezes, so that repeated subtrees in separate documents are also deduplicated. As the
+ * frozen structures are immutable, sharing is safe for all read operations of
+ * {@link JsonValue}; attempts to modify them throw {@link UnsupportedOperationException}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class JsonFreezer {
+
+    /** The shared instances of the frozen containers. */
+    private final HashMap<Node, Node> nodes = new HashMap<Node, Node>();
+
+    /** The number of containers that have been frozen. */
+    private int nodeCount;
+
+    /** The number of frozen containers that were replaced by a shared instance. */
+    private int sharedCount;
+
+    /**
+     * Returns a frozen copy of the specified JSON value. Transformations are applied while
+     * traversing the value's members, so the returned value does not include the
+     * transformers from the specified value.
+     *
+     * @param value the value to freeze.
+     * @return the frozen value.
+     * @throws JsonException if a transformer failed to transform a member value.
+     */
+    public JsonValue freeze(JsonValue value) throws JsonException {
+        return new JsonValue(intern(value), value.getPointer());
+    }
+
+    /**
+     * Returns the number of containers that have been frozen by this freezer.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of frozen containers that were replaced by an equal, shared
+     * instance. This is the number of containers saved by freezing.
+     */
+    public int getSharedCount() {
+        return sharedCount;
+    }
+
+    /**
+     * Returns the shared, frozen instance of the specified value.
+     */
+    private Object intern(JsonValue value) {
+        Object object;
+        if (value.isMap()) {
+            PersistentMap map = PersistentMap.EMPTY;
+            for (String key : value.keys()) {
+                map = map.plus(key, intern(value.get(key))); // recursion
+            }
+            object = map;
+        } else if (value.isList()) {
+            PersistentList list = PersistentList.EMPTY;
+            for (JsonValue element : value) {
+                list = list.plus(intern(element)); // recursion
+            }
+            object = list;
+        } else {
+            return value.getObject();
+        }
+        nodeCount++;
+        Node node = new Node(object);
+        Node shared = nodes.get(node);
+        if (shared != null) {
+            sharedCount++;
+            return shared.object;
+        }
+        nodes.put(node, node);
+        return object;
+    }
+
+    /**
+     * Returns {@code true} if the members are the same: identical if containers, which are
+     * shared instances, otherwise equal.
+     */
+    private static boolean same(Object o1, Object o2) {
+        if (o1 == o2) {
+            return true;
+        } else if (o1 == null || o2 == null || o1 instanceof Map || o1 instanceof List) {
+            return false;
+        }
+        return o1.equals(o2);
+    }
+
+    /**
+     * Returns the hash code of a member, consistent with {@link #same}.
+     */
+    private static int hash(Object object) {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof Map || object instanceof List) {
+            return System.identityHashCode(object);
+        }
+        return object.hashCode();
+    }
+
+    /**
+     * A frozen container, compared by the sameness of its members.
+     */
+    private static final class Node {
+
+        final Object object;
+
+        final int hash;
+
+        Node(Object object) {
+            this.object = object;
+            int h = 0;
+            if (object instanceof PersistentMap) {
+                for (Map.Entry<String, Object> entry : ((PersistentMap)object).entrySet()) {
+                    h += entry.getKey().hashCode() ^ hash(entry.getValue());
+                }
+            } else {
+                h = 1;
+                for (Object element : (PersistentList)object) {
+                    h = 31 * h + hash(element);
+                }
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            Node node = (Node)o;
+            if (hash != node.hash || object.getClass() != node.object.getClass()) {
+                return false;
+            }
+            if (object instanceof PersistentMap) {
+                PersistentMap m1 = (PersistentMap)object;
+                PersistentMap m2 = (PersistentMap)node.object;
+                if (m1.size() != m2.size()) {
+                    return false;
+                }
+                for (Map.Entry<String, Object> entry : m1.entrySet()) {
+                    Object value = m2.get(entry.getKey());
+                    if (!same(entry.getValue(), value) ||
+                    (value == null && !m2.containsKey(entry.getKey()))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            PersistentList l1 = (PersistentList)object;
+            PersistentList l2 = (PersistentList)node.object;
+            if (l1.size() != l2.size()) {
+                return false;
+            }
+            for (int n = 0; n < l1.size(); n++) {
+                if (!same(l1.get(n), l2.get(n))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+/**
+ * Interface for receiving a JSON structure as a stream of events, such as by a streaming
+ * serializer. Each member of a map is reported by a call to {@link #key} followed by the
+ * events of its value; each element of a list is reported by the events of its value alone.
+ */
+public interface JsonHandler {
+
+    /**
+     * Receives the start of a {@code Map} value.
+     *
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void startMap() throws JsonException;
+
+    /**
+     * Receives the key of the next member of the current {@code Map} value.
+     *
+     * @param key the key of the member.
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void key(String key) throws JsonException;
+
+    /**
+     * Receives the end of the current {@code Map} value.
+     *
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void endMap() throws JsonException;
+
+    /**
+     * Receives the start of a {@code List} value.
+     *
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void startList() throws JsonException;
+
+    /**
+     * Receives the end of the current {@code List} value.
+     *
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void endList() throws JsonException;
+
+    /**
+     * Receives a value that is neither a {@code Map} nor a {@code List}.
+     *
+     * @param value the value, or {@code null}.
+     * @throws JsonException if an exception occurred handling the event.
+     */
+    void value(Object value) throws JsonException;
+}
@@ -0,0 +1,565 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes and applies the differences between JSON values as patches, in the form of JSON
+ * Patch documents. A patch is a {@code List} of operations, each of which is a {@code Map}
+ * with an {@code "op"} member of {@code "add"}, {@code "remove"}, {@code "replace"},
+ * {@code "move"}, {@code "copy"} or {@code "test"}, a {@code "path"} member containing the
+ * {@link JsonPointer} string of the target value, and a {@code "value"} or {@code "from"}
+ * member as required by the operation. Operations are applied in order.
+ */
+public final class JsonPatch {
+
+    /** The member that identifies the objects in a list, so that moves can be detected. */
+    public static final String ID = "_id";
+
+    /**
+     * Static methods only.
+     */
+    private JsonPatch() {
+    }
+
+    /**
+     * Returns a patch that transforms the original value into the target value.
+     * <p>
+     * Subtrees that are identical, or that are frozen and have equal structural hashes, are
+     * skipped without being traversed. If all of the elements of a list, in both values, are
+     * objects with distinct {@link #ID} members, then elements are matched by that member,
+     * and reordered elements are expressed as {@code "move"} operations; otherwise, list
+     * elements are matched by index.
+     *
+     * @param original the value to transform.
+     * @param target the value that the original is to be transformed into.
+     * @return the patch, an empty list if the values are equal.
+     * @throws JsonException if a transformer failed to transform a member value.
+     */
+    public static JsonValue diff(JsonValue original, JsonValue target) throws JsonException {
+        List<Object> ops = ContainerFactory.getDefault().newList(0);
+        diff(ops, new JsonPointer(), original, target);
+        return new JsonValue(ops);
+    }
+
+    /**
+     * Applies a patch to the specified value. The patch is applied atomically: if any
+     * operation fails, all of the operations that were already applied are undone, and the
+     * value is left as it was. Values are not copied up-front; instead, each modification is
+     * recorded so that it can be reversed. An object member that is restored may change
+     * position in its object's iteration order.
+     * <p>
+     * The parent of each target value is resolved once, from the nearest parent that was
+     * already resolved by a preceding operation, so operations on nearby values do not walk
+     * the structure from the root. Transformers are not applied. The index and cached values
+     * of the value, if enabled, are discarded.
+     *
+     * @param value the value to apply the patch to.
+     * @param patch the patch to apply.
+     * @throws JsonValueException if the patch is malformed, or an operation failed.
+     */
+    public static void apply(JsonValue value, JsonValue patch) throws JsonValueException {
+        new Application(value).apply(patch.required().expect(List.class));
+    }
+
+    /**
+     * Appends the operations that transform the original value into the target value.
+     */
+    private static void diff(List<Object> ops, JsonPointer path, JsonValue original,
+    JsonValue target) {
+        if (StructuralEquality.isUnchanged(original.getObject(), target.getObject())) {
+            return;
+        } else if (original.isMap() && target.isMap()) {
+            for (String key : original.keys()) {
+                if (!target.isDefined(key)) {
+                    ops.add(op("remove", path.child(key), null, null));
+                } else {
+                    diff(ops, path.child(key), original.get(key), target.get(key)); // recursion
+                }
+            }
+            for (String key : target.keys()) {
+                if (!original.isDefined(key)) {
+                    ops.add(op("add", path.child(key), null, target.get(key)));
+                }
+            }
+        } else if (original.isList() && target.isList()) {
+            HashMap<Object, JsonValue> originalIds = ids(original);
+            HashMap<Object, JsonValue> targetIds = (originalIds != null ? ids(target) : null);
+            if (targetIds != null) {
+                diffKeyed(ops, path, original, target, originalIds, targetIds);
+            } else {
+                diffIndexed(ops, path, original, target);
+            }
+        } else if (!StructuralEquality.equal(original.getObject(), target.getObject())) {
+            ops.add(op("replace", path, null, target));
+        }
+    }
+
+    /**
+     * Appends the operations that transform the original list into the target list, matching
+     * elements by index.
+     */
+    private static void diffIndexed(List<Object> ops, JsonPointer path, JsonValue original,
+    JsonValue target) {
+        int size = original.size();
+        int common = Math.min(size, target.size());
+        for (int n = 0; n < common; n++) {
+            diff(ops, path.child(n), original.get(n), target.get(n)); // recursion
+        }
+        for (int n = size - 1; n >= common; n--) {
+            ops.add(op("remove", path.child(n), null, null));
+        }
+        for (int n = common; n < target.size(); n++) {
+            ops.add(op("add", path.child(n), null, target.get(n)));
+        }
+    }
+
+    /**
+     * Appends the operations that transform the original list into the target list, matching
+     * elements by their identifiers.
+     */
+    private static void diffKeyed(List<Object> ops, JsonPointer path, JsonValue original,
+    JsonValue target, HashMap<Object, JsonValue> originalIds,
+    HashMap<Object, JsonValue> targetIds) {
+        HashMap<Object, Integer> survivors = new HashMap<Object, Integer>(); // id to rank
+        for (int n = original.size() - 1; n >= 0; n--) {
+            if (!targetIds.containsKey(original.get(n).get(ID).getObject())) {
+                ops.add(op("remove", path.child(n), null, null));
+            }
+        }
+        for (JsonValue element : original) {
+            Object id = element.get(ID).getObject();
+            if (targetIds.containsKey(id)) {
+                survivors.put(id, Integer.valueOf(survivors.size()));
+            }
+        }
+        // elements before n are in place; the rest keep their original relative order
+        Unplaced unplaced = new Unplaced(survivors.size());
+        for (int n = 0; n < target.size(); n++) {
+            JsonValue element = target.get(n);
+            Object id = element.get(ID).getObject();
+            Integer rank = survivors.get(id);
+            if (rank == null) {
+                ops.add(op("add", path.child(n), null, element));
+                continue;
+            }
+            int from = n + unplaced.before(rank.intValue());
+            if (from != n) { // from > n
+                ops.add(op("move", path.child(n), path.child(from), null));
+            }
+            unplaced.place(rank.intValue());
+            diff(ops, path.child(n), originalIds.get(id), element); // recursion
+        }
+    }
+
+    /**
+     * Counts the surviving elements of a keyed list that are not yet in place, by their rank
+     * in the original list, in {@code O(log n)} time per operation.
+     */
+    private static final class Unplaced {
+
+        /** A binary indexed tree of the unplaced flags of the ranks. */
+        private final int[] tree;
+
+        /**
+         * Constructs a counter in which all of the specified number of ranks are unplaced.
+         */
+        Unplaced(int size) {
+            tree = new int[size + 1];
+            for (int i = 1; i <= size; i++) {
+                tree[i]++;
+                int parent = i + (i & -i);
+                if (parent <= size) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+
+        /**
+         * Returns the number of unplaced ranks less than the specified rank.
+         */
+        int before(int rank) {
+            int result = 0;
+            for (int i = rank; i > 0; i -= (i & -i)) {
+                result += tree[i];
+            }
+            return result;
+        }
+
+        /**
+         * Marks the specified rank as placed.
+         */
+        void place(int rank) {
+            for (int i = rank + 1; i < tree.length; i += (i & -i)) {
+                tree[i]--;
+            }
+        }
+    }
+
+    /**
+     * Returns the elements of the specified list by identifier, or {@code null} if any
+     * element is not an object with an identifier, or if any identifier is repeated.
+     */
+    private static HashMap<Object, JsonValue> ids(JsonValue list) {
+        HashMap<Object, JsonValue> result = new HashMap<Object, JsonValue>();
+        for (JsonValue element : list) {
+            if (!element.isMap() || element.get(ID).isNull() ||
+            result.put(element.get(ID).getObject(), element) != null) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code true} if the first pointer is equal to, or is an ancestor of, the
+     * second pointer.
+     */
+    private static boolean isPrefix(JsonPointer prefix, JsonPointer pointer) {
+        if (prefix.size() > pointer.size()) {
+            return false;
+        }
+        for (int n = prefix.size() - 1; n >= 0; n--) {
+            if (!prefix.get(n).equals(pointer.get(n))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a patch operation. The value, if any, is deep copied, so that the patch does
+     * not share structure with the target.
+     */
+    private static Map<String, Object> op(String op, JsonPointer path, JsonPointer from,
+    JsonValue value) {
+        Map<String, Object> result = ContainerFactory.getDefault().newMap(3);
+        result.put("op", op);
+        result.put("path", path.toString());
+        if (from != null) {
+            result.put("from", from.toString());
+        }
+        if (value != null) {
+            result.put("value", value.copy().getObject());
+        }
+        return result;
+    }
+
+    /**
+     * A modification made by a patch operation, which can be reversed.
+     */
+    private abstract static class Undo {
+
+        /**
+         * Reverses the modification.
+         */
+        abstract void undo();
+    }
+
+    /**
+     * The application of a patch to a value.
+     */
+    private static final class Application {
+
+        /** The value that the patch is applied to. */
+        private final JsonValue root;
+
+        /** The resolved containers, keyed by pointer. */
+        private final HashMap<JsonPointer, Object> containers =
+         new HashMap<JsonPointer, Object>();
+
+        /** The modifications made so far, in order. */
+        private final ArrayList<Undo> undos = new ArrayList<Undo>();
+
+        Application(JsonValue root) {
+            this.root = root;
+        }
+
+        /**
+         * Applies the operations of the patch, undoing them all if any fails.
+         */
+        void apply(JsonValue patch) {
+            boolean applied = false;
+            try {
+                for (JsonValue op : patch) {
+                    perform(op.required().expect(Map.class));
+                }
+                applied = true;
+            } finally {
+                if (!applied) {
+                    for (int n = undos.size() - 1; n >= 0; n--) {
+                        undos.get(n).undo();
+                    }
+                }
+                root.modified(); // the backing objects were modified directly
+            }
+        }
+
+        /**
+         * Performs a single operation.
+         */
+        private void perform(JsonValue op) {
+            String name = op.get("op").required().asString();
+            JsonPointer path = pointer(op, "path");
+            if (name.equals("add")) {
+                add(op, path, value(op));
+            } else if (name.equals("remove")) {
+                remove(op, path);
+            } else if (name.equals("replace")) {
+                replace(op, path, value(op));
+            } else if (name.equals("move")) {
+                JsonPointer from = pointer(op, "from");
+                if (from.equals(path)) {
+                    get(op, from); // the value must exist, though moving it has no effect
+                } else if (isPrefix(from, path)) {
+                    throw new JsonValueException(op, "Cannot move a value into itself");
+                } else {
+                    add(op, path, remove(op, from));
+                }
+            } else if (name.equals("copy")) {
+                add(op, path, new JsonValue(get(op, pointer(op, "from"))).copy().getObject());
+            } else if (name.equals("test")) {
+                if (!StructuralEquality.equal(get(op, path), value(op))) {
+                    throw new JsonValueException(op, "Test failed for " + path);
+                }
+            } else {
+                throw new JsonValueException(op, "Unknown operation " + name);
+            }
+        }
+
+        /**
+         * Returns the pointer held by the specified member of the operation.
+         */
+        private JsonPointer pointer(JsonValue op, String key) {
+            return new JsonPointer(op.get(key).required().asString());
+        }
+
+        /**
+         * Returns a copy of the value of the operation.
+         */
+        private Object value(JsonValue op) {
+            if (!op.isDefined("value")) {
+                throw new JsonValueException(op, "Expecting a value");
+            }
+            return op.get("value").copy().getObject();
+        }
+
+        /**
+         * Returns the list index identified by the token, which must not exceed the
+         * specified maximum. The token must be in canonical form, with no sign or leading
+         * zeros.
+         */
+        private int index(JsonValue op, String token, int max) {
+            int result = -1;
+            try {
+                result = Integer.parseInt(token);
+            } catch (NumberFormatException nfe) {
+                // yields an exception below
+            }
+            if (result < 0 || !token.equals(Integer.toString(result))) {
+                throw new JsonValueException(op, "Malformed list index: " + token);
+            } else if (result > max) {
+                throw new JsonValueException(op, "List index out of range: " + token);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the member of the container identified by the token.
+         */
+        private Object member(JsonValue op, Object container, String token) {
+            if (container instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)container;
+                if (!map.containsKey(token)) {
+                    throw new JsonValueException(op, "Member " + token + " does not exist");
+                }
+                return map.get(token);
+            } else if (container instanceof List) {
+                List<?> list = (List<?>)container;
+                return list.get(index(op, token, list.size() - 1));
+            }
+            throw new JsonValueException(op, "Expecting a Map or List");
+        }
+
+        /**
+         * Returns the value identified by the pointer, resolving it from the nearest
+         * resolved ancestor.
+         */
+        private Object resolve(JsonValue op, JsonPointer pointer) {
+            if (pointer.size() == 0) {
+                return root.getObject();
+            }
+            Object result = containers.get(pointer);
+            if (result == null) {
+                result = member(op, resolve(op, pointer.parent()), pointer.leaf()); // recursion
+                if (result instanceof Map || result instanceof List) {
+                    containers.put(pointer, result);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the container of the value identified by the pointer.
+         */
+        private Object parent(JsonValue op, JsonPointer path) {
+            Object result = resolve(op, path.parent());
+            if (!(result instanceof Map || result instanceof List)) {
+                throw new JsonValueException(op, "Expecting a Map or List at " + path.parent());
+            }
+            return result;
+        }
+
+        /**
+         * Returns the value identified by the pointer.
+         */
+        private Object get(JsonValue op, JsonPointer path) {
+            if (path.size() == 0) {
+                return root.getObject();
+            }
+            return member(op, parent(op, path), path.leaf());
+        }
+
+        /**
+         * Discards the resolved containers at or below the specified pointer.
+         */
+        private void invalidate(JsonPointer pointer) {
+            for (Iterator<JsonPointer> i = containers.keySet().iterator(); i.hasNext();) {
+                if (isPrefix(pointer, i.next())) {
+                    i.remove();
+                }
+            }
+        }
+
+        /**
+         * Replaces the root value, recording how to restore it.
+         */
+        private void setRoot(Object value) {
+            final Object old = root.getObject();
+            root.setObject(value);
+            containers.clear();
+            undos.add(new Undo() {
+                @Override void undo() {
+                    root.setObject(old);
+                }
+            });
+        }
+
+        /**
+         * Sets a map member, recording how to restore it.
+         */
+        private Object put(final Map<String, Object> map, final String key, Object value) {
+            final boolean existed = map.containsKey(key);
+            final Object old = map.put(key, value);
+            undos.add(new Undo() {
+                @Override void undo() {
+                    if (existed) {
+                        map.put(key, old);
+                    } else {
+                        map.remove(key);
+                    }
+                }
+            });
+            return old;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(JsonValue op, JsonPointer path, Object value) {
+            if (path.size() == 0) {
+                setRoot(value);
+                return;
+            }
+            Object container = parent(op, path);
+            if (container instanceof Map) {
+                put((Map<String, Object>)container, path.leaf(), value);
+                invalidate(path);
+            } else {
+                final List<Object> list = (List<Object>)container;
+                final int index = (path.leaf().equals("-") ? list.size() :
+                 index(op, path.leaf(), list.size()));
+                list.add(index, value);
+                undos.add(new Undo() {
+                    @Override void undo() {
+                        list.remove(index);
+                    }
+                });
+                invalidate(path.parent()); // subsequent indices have shifted
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object remove(JsonValue op, JsonPointer path) {
+            if (path.size() == 0) {
+                throw new JsonValueException(op, "Cannot remove the root value");
+            }
+            Object container = parent(op, path);
+            if (container instanceof Map) {
+                final Map<String, Object> map = (Map<String, Object>)container;
+                final String key = path.leaf();
+                member(op, map, key); // must exist
+                final Object old = map.remove(key);
+                undos.add(new Undo() {
+                    @Override void undo() {
+                        map.put(key, old);
+                    }
+                });
+                invalidate(path);
+                return old;
+            } else {
+                final List<Object> list = (List<Object>)container;
+                final int index = index(op, path.leaf(), list.size() - 1);
+                final Object old = list.remove(index);
+                undos.add(new Undo() {
+                    @Override void undo() {
+                        list.add(index, old);
+                    }
+                });
+                invalidate(path.parent()); // subsequent indices have shifted
+                return old;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void replace(JsonValue op, JsonPointer path, Object value) {
+            if (path.size() == 0) {
+                setRoot(value);
+                return;
+            }
+            Object container = parent(op, path);
+            if (container instanceof Map) {
+                member(op, container, path.leaf()); // must exist
+                put((Map<String, Object>)container, path.leaf(), value);
+            } else {
+                final List<Object> list = (List<Object>)container;
+                final int index = index(op, path.leaf(), list.size() - 1);
+                final Object old = list.set(index, value);
+                undos.add(new Undo() {
+                    @Override void undo() {
+                        list.set(index, old);
+                    }
+                });
+            }
+            invalidate(path);
+        }
+    }
+}
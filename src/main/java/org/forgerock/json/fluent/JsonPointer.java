@@ -35,6 +35,9 @@ public class JsonPointer implements Iterable<String> {
     /** The reference tokens that make-up the JSON pointer. */
     private String[] tokens = new String[0];
 
+    /** The cached hash code of the pointer, or {@code 0} if not yet computed. */
+    private int hash;
+
     /**
      * Constructs a JSON pointer, identifying the root value of a JSON structure.
      */
@@ -196,6 +199,24 @@ public class JsonPointer implements Iterable<String> {
         return child(Integer.toString(child));
     }
 
+    /**
+     * Returns a JSON pointer which identifies the value identified by the specified pointer,
+     * relative to the value identified by this pointer. The tokens are copied once, rather
+     * than by appending each token with {@link #child(String)}.
+     *
+     * @param pointer the pointer relative to this pointer.
+     * @return the concatenated JSON pointer.
+     */
+    JsonPointer concat(JsonPointer pointer) {
+        if (tokens.length == 0) {
+            return pointer; // immutable, so can be shared
+        }
+        JsonPointer result = new JsonPointer();
+        result.tokens = Arrays.copyOf(tokens, tokens.length + pointer.tokens.length);
+        System.arraycopy(pointer.tokens, 0, result.tokens, tokens.length, pointer.tokens.length);
+        return result;
+    }
+
     /**
      * Returns an iterator over the pointer's reference tokens.
      */
@@ -249,6 +270,11 @@ public class JsonPointer implements Iterable<String> {
      */
     @Override
     public int hashCode() {
-        return Arrays.hashCode(tokens);
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(tokens);
+            hash = h;
+        }
+        return h;
     }
 }
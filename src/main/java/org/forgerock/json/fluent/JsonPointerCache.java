@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the values resolved by {@link JsonValue#get(JsonPointer)} on a root
+ * JSON value, evicting the least recently used entry when full. The cache is stamped with the
+ * modification count of its root value, and is emptied on the first lookup after the root
+ * value has been modified, so invalidation costs nothing while the value is being modified.
+ * <p>
+ * Hit and miss counts are kept so that the capacity of the cache can be tuned. This class is
+ * thread-safe.
+ *
+ * @see JsonValue#enableCache(int)
+ */
+public final class JsonPointerCache {
+
+    /** Cached to record that a pointer identifies no value. */
+    static final JsonValue UNDEFINED = new JsonValue(null);
+
+    /** The maximum number of cached values. */
+    private final int capacity;
+
+    /** The cached values, keyed by pointer, in order of access. */
+    private final LinkedHashMap<JsonPointer, JsonValue> entries;
+
+    /** The modification count of the root value when the cached values were resolved. */
+    private int modCount;
+
+    /** The number of lookups that found a cached value. */
+    private long hitCount;
+
+    /** The number of lookups that did not find a cached value. */
+    private long missCount;
+
+    /**
+     * Constructs a new, empty cache.
+     *
+     * @param capacity the maximum number of cached values.
+     * @param modCount the current modification count of the root value.
+     * @throws IllegalArgumentException if {@code capacity} is not positive.
+     */
+    JsonPointerCache(int capacity, int modCount) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.modCount = modCount;
+        entries = new LinkedHashMap<JsonPointer, JsonValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<JsonPointer, JsonValue> eldest) {
+                return size() > JsonPointerCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value of the specified pointer, {@link #UNDEFINED} if the pointer is
+     * cached as identifying no value, or {@code null} if it is not cached. If the root value
+     * has been modified since the values were cached, the cache is emptied.
+     *
+     * @param pointer the pointer of the value to return.
+     * @param modCount the current modification count of the root value.
+     * @return the cached value, {@code UNDEFINED} or {@code null}.
+     */
+    synchronized JsonValue get(JsonPointer pointer, int modCount) {
+        if (this.modCount != modCount) {
+            entries.clear();
+            this.modCount = modCount;
+        }
+        JsonValue result = entries.get(pointer);
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the resolved value of the specified pointer. The value is not cached if the root
+     * value has been modified since the lookup that missed it.
+     *
+     * @param pointer the pointer of the resolved value.
+     * @param value the resolved value, or {@code null} if the pointer identifies no value.
+     * @param modCount the modification count of the root value when it was resolved.
+     */
+    synchronized void put(JsonPointer pointer, JsonValue value, int modCount) {
+        if (this.modCount == modCount) {
+            entries.put(pointer, (value != null ? value : UNDEFINED));
+        }
+    }
+
+    /**
+     * Returns the maximum number of values held by this cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of values currently held by this cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a cached value.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached value.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Removes all cached values, and resets the hit and miss counts.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        hitCount = 0;
+        missCount = 0;
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the values identified by a set of pointers from UTF-8 encoded JSON text, in a
+ * single scan and without building the document. Subtrees that contain no requested value
+ * are skipped without being decoded; only the requested values are built. Scanning stops as
+ * soon as every requested value has been found, without reading the rest of the input.
+ * <p>
+ * Pointers may contain {@link JsonPointerSet#WILDCARD} tokens, in which case every match is
+ * returned, keyed by its concrete pointer, and the whole input is scanned. Requested values
+ * that are not found are absent from the result.
+ * <p>
+ * An extractor is immutable once constructed, and can be used concurrently by multiple
+ * threads.
+ */
+public final class JsonPointerExtractor {
+
+    /** The grammar of a JSON number. */
+    private static final Pattern NUMBER =
+     Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    /** The requested pointers. */
+    private final JsonPointerSet pointers;
+
+    /** The number of values to find before stopping, or {@code -1} to scan all input. */
+    private final int expected;
+
+    /**
+     * Constructs an extractor of the values identified by the specified pointers.
+     *
+     * @param pointers the pointers of the values to extract.
+     */
+    public JsonPointerExtractor(Collection<JsonPointer> pointers) {
+        this.pointers = new JsonPointerSet(pointers);
+        int count = this.pointers.size();
+        for (JsonPointer pointer : this.pointers) {
+            for (String token : pointer) {
+                if (JsonPointerSet.WILDCARD.equals(token)) {
+                    count = -1;
+                }
+            }
+        }
+        expected = count;
+    }
+
+    /**
+     * Extracts the requested values from the specified input. The input is not closed.
+     *
+     * @param in the input to read UTF-8 encoded JSON text from.
+     * @return the values found, keyed by their pointers, in the order they were found.
+     * @throws IOException if an I/O exception occurred reading the input.
+     * @throws JsonException if the input is not well-formed JSON text.
+     */
+    public Map<JsonPointer, JsonValue> extract(InputStream in) throws IOException, JsonException {
+        Scan scan = new Scan(in);
+        if (pointers.size() > 0) {
+            scan.value(pointers.cursor(), new JsonPointer());
+        }
+        return scan.results;
+    }
+
+    /**
+     * The state of a single extraction.
+     */
+    private final class Scan {
+
+        private final InputStream in;
+
+        private final byte[] buffer = new byte[8192];
+
+        /** The position of the next byte to read in the buffer. */
+        private int position;
+
+        /** The number of bytes read into the buffer. */
+        private int limit;
+
+        /** The values found so far. */
+        final LinkedHashMap<JsonPointer, JsonValue> results =
+         new LinkedHashMap<JsonPointer, JsonValue>();
+
+        Scan(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Returns {@code true} if every requested value has been found.
+         */
+        private boolean done() {
+            return (results.size() == expected);
+        }
+
+        /**
+         * Scans a value, extracting the requested values it contains.
+         */
+        void value(JsonPointerSet.Cursor cursor, JsonPointer pointer)
+        throws IOException, JsonException {
+            if (cursor.isMatched()) {
+                Object object = parse();
+                found(pointer, object);
+                descendants(object, cursor, pointer);
+                return;
+            }
+            int c = peek();
+            if (c == '{') {
+                read();
+                if (peek() == '}') {
+                    read();
+                    return;
+                }
+                do {
+                    String key = string();
+                    expect(':');
+                    JsonPointerSet.Cursor child = cursor.child(key);
+                    if (child == null) {
+                        skip();
+                    } else {
+                        value(child, pointer.child(key)); // recursion
+                        if (done()) {
+                            return;
+                        }
+                    }
+                } while (separator('}'));
+            } else if (c == '[') {
+                read();
+                if (peek() == ']') {
+                    read();
+                    return;
+                }
+                int index = 0;
+                do {
+                    JsonPointerSet.Cursor child = cursor.child(Integer.toString(index));
+                    if (child == null) {
+                        skip();
+                    } else {
+                        value(child, pointer.child(index)); // recursion
+                        if (done()) {
+                            return;
+                        }
+                    }
+                    index++;
+                } while (separator(']'));
+            } else {
+                skip();
+            }
+        }
+
+        /**
+         * Records a found value.
+         */
+        private void found(JsonPointer pointer, Object object) {
+            results.put(pointer, new JsonValue(object, pointer));
+        }
+
+        /**
+         * Records the requested values within a value that has already been built.
+         */
+        private void descendants(Object object, JsonPointerSet.Cursor cursor,
+        JsonPointer pointer) {
+            if (object instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>)object).entrySet()) {
+                    String key = (String)entry.getKey();
+                    descendant(entry.getValue(), cursor.child(key), pointer, key);
+                }
+            } else if (object instanceof List) {
+                List<?> list = (List<?>)object;
+                for (int n = 0; n < list.size(); n++) {
+                    descendant(list.get(n), cursor.child(Integer.toString(n)), pointer,
+                     Integer.toString(n));
+                }
+            }
+        }
+
+        private void descendant(Object object, JsonPointerSet.Cursor cursor,
+        JsonPointer parent, String token) {
+            if (cursor != null) {
+                JsonPointer pointer = parent.child(token);
+                if (cursor.isMatched()) {
+                    found(pointer, object);
+                }
+                descendants(object, cursor, pointer); // recursion
+            }
+        }
+
+        /**
+         * Parses and builds a value.
+         */
+        private Object parse() throws IOException, JsonException {
+            int c = peek();
+            if (c == '{') {
+                read();
+                Map<String, Object> map = ContainerFactory.getDefault().newMap(0);
+                if (peek() == '}') {
+                    read();
+                    return map;
+                }
+                do {
+                    String key = KeyDictionary.pooled(string());
+                    expect(':');
+                    map.put(key, parse()); // recursion
+                } while (separator('}'));
+                return map;
+            } else if (c == '[') {
+                read();
+                List<Object> list = ContainerFactory.getDefault().newList(0);
+                if (peek() == ']') {
+                    read();
+                    return list;
+                }
+                do {
+                    list.add(parse()); // recursion
+                } while (separator(']'));
+                return list;
+            } else if (c == '"') {
+                return string();
+            }
+            String literal = literal();
+            if (literal.equals("null")) {
+                return null;
+            } else if (literal.equals("true")) {
+                return Boolean.TRUE;
+            } else if (literal.equals("false")) {
+                return Boolean.FALSE;
+            }
+            return number(literal);
+        }
+
+        /**
+         * Skips a value without building it.
+         */
+        private void skip() throws IOException, JsonException {
+            int c = peek();
+            if (c == '"') {
+                read();
+                skipString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = read();
+                    if (c == '"') {
+                        skipString();
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0);
+            } else {
+                literal();
+            }
+        }
+
+        /**
+         * Skips the remainder of a string, whose opening quote has been read.
+         */
+        private void skipString() throws IOException, JsonException {
+            int c;
+            while ((c = read()) != '"') {
+                if (c == '\\') {
+                    read();
+                }
+            }
+        }
+
+        /**
+         * Reads a string, decoding its escapes and UTF-8 encoded characters.
+         */
+        private String string() throws IOException, JsonException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if (c == '\\') {
+                    c = read();
+                    switch (c) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int n = 0; n < 4; n++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw new JsonException("Malformed unicode escape");
+                            }
+                            code = code * 16 + digit;
+                        }
+                        sb.append((char)code);
+                        break;
+                    case '"': case '\\': case '/': sb.append((char)c); break;
+                    default: throw new JsonException("Malformed escape: \\" + (char)c);
+                    }
+                } else if (c < 0x80) {
+                    sb.append((char)c);
+                } else { // multi-byte UTF-8 sequence
+                    int count = (c >= 0xf0 ? 3 : (c >= 0xe0 ? 2 : 1));
+                    int code = c & (0x3f >> count);
+                    for (int n = 0; n < count; n++) {
+                        code = (code << 6) | (read() & 0x3f);
+                    }
+                    sb.appendCodePoint(code);
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Reads a literal or number, up to the next delimiter.
+         */
+        private String literal() throws IOException, JsonException {
+            StringBuilder sb = new StringBuilder();
+            for (int c = peek(); c != -1 && c != ',' && c != '}' && c != ']' && c > ' ';
+            c = peekRaw()) {
+                sb.append((char)read());
+            }
+            if (sb.length() == 0) {
+                throw new JsonException("Expecting a value");
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Converts a numeric literal to the smallest fitting integer type, or to a double.
+         * The literal must follow the JSON number grammar, which does not allow leading plus
+         * signs or zeros, for example.
+         */
+        private Number number(String literal) throws JsonException {
+            if (!NUMBER.matcher(literal).matches()) {
+                throw new JsonException("Malformed literal: " + literal);
+            }
+            try {
+                if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 &&
+                literal.indexOf('E') < 0) {
+                    BigInteger integer = new BigInteger(literal);
+                    if (integer.bitLength() < 32) {
+                        return Integer.valueOf(integer.intValue());
+                    } else if (integer.bitLength() < 64) {
+                        return Long.valueOf(integer.longValue());
+                    }
+                    return integer;
+                }
+                return Double.valueOf(new BigDecimal(literal).doubleValue());
+            } catch (NumberFormatException nfe) {
+                throw new JsonException("Malformed literal: " + literal);
+            }
+        }
+
+        /**
+         * Reads the separator after a member, returning {@code false} if it is the specified
+         * closing character.
+         */
+        private boolean separator(char close) throws IOException, JsonException {
+            int c = peek();
+            read();
+            if (c == ',') {
+                return true;
+            } else if (c == close) {
+                return false;
+            }
+            throw new JsonException("Expecting ',' or '" + close + "'");
+        }
+
+        private void expect(char expected) throws IOException, JsonException {
+            if (peek() != expected) {
+                throw new JsonException("Expecting '" + expected + "'");
+            }
+            read();
+        }
+
+        /**
+         * Returns the next byte that is not whitespace, without consuming it, or {@code -1}
+         * at the end of input.
+         */
+        private int peek() throws IOException {
+            int c;
+            while ((c = peekRaw()) == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                position++;
+            }
+            return c;
+        }
+
+        /**
+         * Returns the next byte without consuming it, or {@code -1} at the end of input.
+         */
+        private int peekRaw() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position] & 0xff;
+        }
+
+        /**
+         * Consumes and returns the next byte.
+         */
+        private int read() throws IOException, JsonException {
+            int c = peekRaw();
+            if (c == -1) {
+                throw new JsonException("Unexpected end of input");
+            }
+            position++;
+            return c;
+        }
+    }
+}
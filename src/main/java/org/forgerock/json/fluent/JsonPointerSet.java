@@ -0,0 +1,387 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of JSON pointers, stored as a trie of their reference tokens, so that a pointer is
+ * matched against all members of the set at a cost that depends on the depth of the pointer
+ * rather than on the number of members. A member may contain the {@link #WILDCARD} token,
+ * which matches any single reference token in the matching methods; it is an ordinary token
+ * in {@link #contains}, {@link #add} and {@link #remove}.
+ * <p>
+ * A structure can be matched while it is traversed by stepping a {@link Cursor} from the
+ * {@link #cursor() root} to each visited child, rather than matching each visited value's
+ * pointer from the root.
+ * <p>
+ * The iteration order of the set is undefined. This class is not thread-safe.
+ */
+public class JsonPointerSet extends AbstractSet<JsonPointer> {
+
+    /** The reference token that matches any single reference token. */
+    public static final String WILDCARD = "*";
+
+    /** The root of the trie, representing the empty pointer. */
+    private final Node root = new Node();
+
+    /** The number of pointers in the set. */
+    private int size;
+
+    /**
+     * Constructs a new, empty pointer set.
+     */
+    public JsonPointerSet() {
+    }
+
+    /**
+     * Constructs a pointer set containing the specified pointers.
+     *
+     * @param pointers the pointers to add to the set.
+     */
+    public JsonPointerSet(Iterable<JsonPointer> pointers) {
+        for (JsonPointer pointer : pointers) {
+            add(pointer);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(JsonPointer pointer) {
+        Node node = root;
+        for (String token : pointer) {
+            Node child = (node.children != null ? node.children.get(token) : null);
+            if (child == null) {
+                if (node.children == null) {
+                    node.children = new HashMap<String, Node>();
+                }
+                child = new Node();
+                node.children.put(token, child);
+            }
+            node = child;
+        }
+        if (node.member) {
+            return false;
+        }
+        node.member = true;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof JsonPointer)) {
+            return false;
+        }
+        Node node = find((JsonPointer)o);
+        return (node != null && node.member);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof JsonPointer)) {
+            return false;
+        }
+        JsonPointer pointer = (JsonPointer)o;
+        Node[] path = new Node[pointer.size() + 1];
+        path[0] = root;
+        for (int n = 0; n < pointer.size(); n++) {
+            Map<String, Node> children = path[n].children;
+            path[n + 1] = (children != null ? children.get(pointer.get(n)) : null);
+            if (path[n + 1] == null) {
+                return false;
+            }
+        }
+        Node node = path[path.length - 1];
+        if (!node.member) {
+            return false;
+        }
+        node.member = false;
+        size--;
+        for (int n = path.length - 1; n > 0 && path[n].isEmpty(); n--) { // prune
+            path[n - 1].children.remove(pointer.get(n - 1));
+            if (path[n - 1].children.isEmpty()) {
+                path[n - 1].children = null;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        root.member = false;
+        root.children = null;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<JsonPointer> iterator() {
+        final ArrayList<JsonPointer> pointers = new ArrayList<JsonPointer>(size);
+        collect(root, new ArrayList<String>(), pointers);
+        return new Iterator<JsonPointer>() {
+            Iterator<JsonPointer> i = pointers.iterator();
+            JsonPointer last;
+            @Override public boolean hasNext() {
+                return i.hasNext();
+            }
+            @Override public JsonPointer next() {
+                last = i.next();
+                return last;
+            }
+            @Override public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                JsonPointerSet.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Returns {@code true} if a member of this set matches the specified pointer.
+     *
+     * @param pointer the pointer to match.
+     * @return {@code true} if the pointer is matched.
+     */
+    public boolean matches(JsonPointer pointer) {
+        Cursor cursor = cursor().child(pointer);
+        return (cursor != null && cursor.isMatched());
+    }
+
+    /**
+     * Returns {@code true} if a member of this set matches the specified pointer or one of its
+     * ancestors; that is, if the value identified by the pointer is within a subtree
+     * identified by a member.
+     *
+     * @param pointer the pointer to match.
+     * @return {@code true} if the pointer or one of its ancestors is matched.
+     */
+    public boolean matchesAncestorOf(JsonPointer pointer) {
+        Cursor cursor = cursor();
+        for (String token : pointer) {
+            if (cursor.isMatched()) {
+                return true;
+            }
+            cursor = cursor.child(token);
+            if (cursor == null) {
+                return false;
+            }
+        }
+        return cursor.isMatched();
+    }
+
+    /**
+     * Returns {@code true} if a member of this set matches the specified pointer or one of its
+     * descendants; that is, if a value identified by a member is within the subtree
+     * identified by the pointer.
+     *
+     * @param pointer the pointer to match.
+     * @return {@code true} if the pointer or one of its descendants is matched.
+     */
+    public boolean matchesDescendantOf(JsonPointer pointer) {
+        return (cursor().child(pointer) != null);
+    }
+
+    /**
+     * Returns the members of this set that are the specified pointer or have it as a prefix.
+     * Wildcards are not expanded.
+     *
+     * @param pointer the prefix of the members to return.
+     * @return the members with the specified prefix.
+     */
+    public List<JsonPointer> withPrefix(JsonPointer pointer) {
+        ArrayList<JsonPointer> result = new ArrayList<JsonPointer>();
+        Node node = find(pointer);
+        if (node != null) {
+            ArrayList<String> tokens = new ArrayList<String>();
+            for (String token : pointer) {
+                tokens.add(token);
+            }
+            collect(node, tokens, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a cursor at the root of the trie, matching the empty pointer.
+     */
+    public Cursor cursor() {
+        return new Cursor(new Node[] { root }, false);
+    }
+
+    /**
+     * Returns the node of the specified pointer, or {@code null} if it is not in the trie.
+     */
+    private Node find(JsonPointer pointer) {
+        Node node = root;
+        for (String token : pointer) {
+            node = (node.children != null ? node.children.get(token) : null);
+            if (node == null) {
+                break;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Adds the pointers of the members in the subtree of the specified node to a list.
+     */
+    private static void collect(Node node, ArrayList<String> tokens, List<JsonPointer> result) {
+        if (node.member) {
+            result.add(new JsonPointer(tokens.toArray(new String[tokens.size()])));
+        }
+        if (node.children != null) {
+            for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+                tokens.add(entry.getKey());
+                collect(entry.getValue(), tokens, result); // recursion
+                tokens.remove(tokens.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * A position in the trie, reached by matching a pointer from the root. With wildcards, a
+     * pointer can match more than one path in the trie, so a cursor can refer to several
+     * nodes. Cursors are immutable; stepping to a child yields a new cursor.
+     */
+    public static final class Cursor {
+
+        /** The nodes matched by the pointer. */
+        private final Node[] nodes;
+
+        /** {@code true} if a proper ancestor of the pointer was matched by a member. */
+        private final boolean covered;
+
+        private Cursor(Node[] nodes, boolean covered) {
+            this.nodes = nodes;
+            this.covered = covered;
+        }
+
+        /**
+         * Returns a cursor for the child with the specified reference token, or {@code null}
+         * if no member of the set matches the child or any of its descendants.
+         *
+         * @param token the reference token of the child.
+         * @return the cursor of the child, or {@code null}.
+         */
+        public Cursor child(String token) {
+            Node[] result = new Node[nodes.length * 2];
+            int count = 0;
+            for (Node node : nodes) {
+                if (node.children != null) {
+                    Node literal = node.children.get(token);
+                    if (literal != null) {
+                        result[count++] = literal;
+                    }
+                    Node wildcard = node.children.get(WILDCARD);
+                    if (wildcard != null && wildcard != literal) {
+                        result[count++] = wildcard;
+                    }
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            if (count < result.length) {
+                Node[] trimmed = new Node[count];
+                System.arraycopy(result, 0, trimmed, 0, count);
+                result = trimmed;
+            }
+            return new Cursor(result, covered || isMatched());
+        }
+
+        /**
+         * Returns a cursor for the descendant identified by the specified pointer, relative
+         * to this cursor, or {@code null} if no member of the set matches the descendant or
+         * any of its own descendants.
+         *
+         * @param pointer the relative pointer of the descendant.
+         * @return the cursor of the descendant, or {@code null}.
+         */
+        public Cursor child(JsonPointer pointer) {
+            Cursor result = this;
+            for (String token : pointer) {
+                result = result.child(token);
+                if (result == null) {
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns {@code true} if a member of the set matches the pointer of this cursor.
+         */
+        public boolean isMatched() {
+            for (Node node : nodes) {
+                if (node.member) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns {@code true} if a member of the set matches the pointer of this cursor or
+         * one of its ancestors.
+         */
+        public boolean isCovered() {
+            return (covered || isMatched());
+        }
+
+        /**
+         * Returns {@code true} if a member of the set matches a descendant of the pointer of
+         * this cursor.
+         */
+        public boolean hasDescendants() {
+            for (Node node : nodes) {
+                if (node.children != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A node of the trie, representing a pointer that is a member of the set or a prefix of
+     * one.
+     */
+    private static final class Node {
+
+        /** {@code true} if the pointer of this node is a member of the set. */
+        boolean member;
+
+        /** The children of this node, keyed by reference token, or {@code null} if none. */
+        HashMap<String, Node> children;
+
+        boolean isEmpty() {
+            return (!member && children == null);
+        }
+    }
+}
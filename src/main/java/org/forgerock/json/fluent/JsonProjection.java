@@ -0,0 +1,305 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Projects JSON values onto sets of included and excluded pointers, in a single traversal.
+ * A value is retained if it, or one of its ancestors, is matched by an included pointer, and
+ * neither it nor any of its ancestors is matched by an excluded pointer; if no pointers are
+ * included, all values are included. The containers on the path to a retained value are also
+ * retained, holding only their retained members; such a container is omitted if none of its
+ * members are retained. Pointers may contain {@link JsonPointerSet#WILDCARD} tokens.
+ * <p>
+ * Only retained values are visited and copied. The projection can also be written directly
+ * to a {@link JsonHandler}, such as a streaming serializer, without building the projected
+ * structure. Transformers are not applied.
+ * <p>
+ * A projection is immutable once constructed, and can be used concurrently by multiple
+ * threads.
+ */
+public final class JsonProjection {
+
+    /** The included pointers; empty to include all values. */
+    private final JsonPointerSet includes;
+
+    /** The excluded pointers. */
+    private final JsonPointerSet excludes;
+
+    /**
+     * Constructs a projection with the specified included and excluded pointers.
+     *
+     * @param includes the included pointers, or an empty collection to include all values.
+     * @param excludes the excluded pointers, which take precedence over included pointers.
+     */
+    public JsonProjection(Collection<JsonPointer> includes, Collection<JsonPointer> excludes) {
+        this.includes = new JsonPointerSet(includes);
+        this.excludes = new JsonPointerSet(excludes);
+    }
+
+    /**
+     * Returns a projected copy of the specified JSON value. If the value itself is excluded,
+     * or neither it nor any of its members are included, a JSON value containing
+     * {@code null} is returned.
+     *
+     * @param value the value to project.
+     * @return the projected copy of the value.
+     * @throws JsonException if the projection failed.
+     */
+    public JsonValue apply(JsonValue value) throws JsonException {
+        Builder builder = new Builder();
+        apply(value, builder);
+        return new JsonValue(builder.result, value.getPointer());
+    }
+
+    /**
+     * Writes the projection of the specified JSON value to a handler. If the value itself is
+     * excluded, or neither it nor any of its members are included, no events are written.
+     *
+     * @param value the value to project.
+     * @param handler the handler to receive the projected structure.
+     * @throws JsonException if the handler failed to handle an event.
+     */
+    public void apply(JsonValue value, JsonHandler handler) throws JsonException {
+        Object object = value.getObject();
+        JsonPointerSet.Cursor exclude = null; // null if no values are excluded
+        if (excludes.size() > 0) {
+            exclude = excludes.cursor();
+            if (exclude.isMatched()) {
+                return;
+            }
+        }
+        JsonPointerSet.Cursor include = null; // null if all values are included
+        boolean deferred = false;
+        if (includes.size() > 0) {
+            include = includes.cursor();
+            if (include.isMatched()) {
+                include = null;
+            } else if (object instanceof Map || object instanceof List) {
+                deferred = true; // only descendants are included
+            } else {
+                return;
+            }
+        }
+        project(object, include, exclude, new Emitter(handler), deferred);
+    }
+
+    /**
+     * Projects an object, whose ancestors are all retained.
+     *
+     * @param include the cursor of the object in the included pointers, or {@code null} if
+     * the object is wholly included.
+     * @param exclude the cursor of the object in the excluded pointers, or {@code null} if
+     * nothing in the object is excluded.
+     * @param deferred {@code true} if the object is only to be written if it has retained
+     * members.
+     */
+    private static void project(Object object, JsonPointerSet.Cursor include,
+    JsonPointerSet.Cursor exclude, Emitter out, boolean deferred) throws JsonException {
+        if (object instanceof Map) {
+            out.start(true, deferred);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)object).entrySet()) {
+                String key = (String)entry.getKey();
+                member(key, key, entry.getValue(), include, exclude, out);
+            }
+            out.end();
+        } else if (object instanceof List) {
+            out.start(false, deferred);
+            List<?> list = (List<?>)object;
+            int size = list.size();
+            for (int n = 0; n < size; n++) {
+                member(Integer.toString(n), null, list.get(n), include, exclude, out);
+            }
+            out.end();
+        } else {
+            out.value(object);
+        }
+    }
+
+    /**
+     * Projects a member of a container, whose ancestors are all retained.
+     *
+     * @param token the reference token of the member.
+     * @param key the key of the member, or {@code null} if it is a list element.
+     */
+    private static void member(String token, String key, Object object,
+    JsonPointerSet.Cursor include, JsonPointerSet.Cursor exclude, Emitter out)
+    throws JsonException {
+        if (exclude != null) {
+            exclude = exclude.child(token);
+            if (exclude != null && exclude.isMatched()) {
+                return;
+            }
+        }
+        boolean deferred = false;
+        if (include != null) {
+            include = include.child(token);
+            if (include == null) {
+                return; // neither the member nor its descendants are included
+            } else if (include.isMatched()) {
+                include = null;
+            } else if (object instanceof Map || object instanceof List) {
+                deferred = true; // only descendants are included
+            } else {
+                return;
+            }
+        }
+        out.key(key);
+        project(object, include, exclude, out, deferred); // recursion
+    }
+
+    /**
+     * Writes events to a handler, deferring the start of containers that are only to be
+     * written if they have retained members.
+     */
+    private static final class Emitter {
+
+        private final JsonHandler handler;
+
+        /** The open containers, and their keys if they are map members. */
+        private final ArrayList<Object[]> frames = new ArrayList<Object[]>();
+
+        /** The number of open containers whose start has been written. */
+        private int written;
+
+        /** The key of the next value, if not yet written. */
+        private String key;
+
+        Emitter(JsonHandler handler) {
+            this.handler = handler;
+        }
+
+        void key(String key) {
+            this.key = key;
+        }
+
+        void start(boolean map, boolean deferred) throws JsonException {
+            frames.add(new Object[] { key, Boolean.valueOf(map) });
+            key = null;
+            if (!deferred) {
+                flush();
+            }
+        }
+
+        void end() throws JsonException {
+            Object[] frame = frames.remove(frames.size() - 1);
+            if (written > frames.size()) {
+                written--;
+                if (frame[1] == Boolean.TRUE) {
+                    handler.endMap();
+                } else {
+                    handler.endList();
+                }
+            }
+        }
+
+        void value(Object value) throws JsonException {
+            String k = key;
+            key = null;
+            flush();
+            if (k != null) {
+                handler.key(k);
+            }
+            handler.value(value);
+        }
+
+        /**
+         * Writes the start of every open container whose start has been deferred.
+         */
+        private void flush() throws JsonException {
+            for (; written < frames.size(); written++) {
+                Object[] frame = frames.get(written);
+                if (frame[0] != null) {
+                    handler.key((String)frame[0]);
+                }
+                if (frame[1] == Boolean.TRUE) {
+                    handler.startMap();
+                } else {
+                    handler.startList();
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the projected structure from the events it receives.
+     */
+    private static final class Builder implements JsonHandler {
+
+        /** The containers being built. */
+        private final ArrayList<Object> stack = new ArrayList<Object>();
+
+        /** The key of the next member of the current map. */
+        private String key;
+
+        /** The built structure. */
+        Object result;
+
+        @Override
+        public void startMap() {
+            Object map = ContainerFactory.getDefault().newMap(0);
+            add(map);
+            stack.add(map);
+        }
+
+        @Override
+        public void key(String key) {
+            this.key = KeyDictionary.pooled(key);
+        }
+
+        @Override
+        public void endMap() {
+            stack.remove(stack.size() - 1);
+        }
+
+        @Override
+        public void startList() {
+            Object list = ContainerFactory.getDefault().newList(0);
+            add(list);
+            stack.add(list);
+        }
+
+        @Override
+        public void endList() {
+            stack.remove(stack.size() - 1);
+        }
+
+        @Override
+        public void value(Object value) {
+            add(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(Object value) {
+            if (stack.isEmpty()) {
+                result = value;
+                return;
+            }
+            Object container = stack.get(stack.size() - 1);
+            if (container instanceof Map) {
+                ((Map<String, Object>)container).put(key, value);
+            } else {
+                ((List<Object>)container).add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,591 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A compiled query, which selects the values in a JSON structure that match a path of
+ * steps. A query has the syntax of a JSON pointer, in which each reference token is a step:
+ * <ul>
+ * <li>a reference token selects the member with that key or list index;</li>
+ * <li>{@code *} selects every member;</li>
+ * <li>{@code **} selects the value and every one of its descendants.</li>
+ * </ul>
+ * Each step may be followed by predicates, in brackets, which the selected values must
+ * satisfy. A predicate is a pointer relative to the selected value, optionally followed by
+ * an operator ({@code =}, {@code !=}, {@code <}, {@code <=}, {@code >} or {@code >=}) and
+ * a literal: a number, {@code true}, {@code false}, {@code null}, or a string in single or
+ * double quotes. Without an operator, the predicate is satisfied if the value exists. For
+ * example, {@code /members/*[/active=true][/age>30]/email} selects the e-mail addresses of
+ * the active members over thirty. Reference tokens are escaped as in a JSON pointer, so a
+ * key containing {@code [} is written as {@code %5B}.
+ * <p>
+ * The query is parsed once, into a chain of steps that is evaluated against each value it
+ * is applied to. Matches are returned in document order, with their concrete pointers.
+ * Transformers are not applied. A query is immutable, and can be used concurrently by
+ * multiple threads.
+ */
+public final class JsonQuery {
+
+    /** The minimum number of elements in each range of a list evaluated in parallel. */
+    private static final int MIN_RANGE = 16;
+
+    /** The result of {@link #compare} for values that cannot be ordered. */
+    static final int UNORDERED = Integer.MIN_VALUE;
+
+    /** The query string. */
+    private final String query;
+
+    /** The first step of the query, or {@code null} if it selects the root value. */
+    private final Step first;
+
+    /**
+     * Compiles a query.
+     *
+     * @param query the query string.
+     * @throws JsonException if the query is malformed.
+     */
+    public JsonQuery(String query) throws JsonException {
+        this.query = query;
+        List<String> steps = split(query);
+        Step step = null;
+        for (int n = steps.size() - 1; n >= 0; n--) {
+            step = parseStep(steps.get(n), step);
+        }
+        first = step;
+    }
+
+    /**
+     * Returns the values selected by this query in the specified JSON value.
+     *
+     * @param value the value to query.
+     * @return the selected values, in document order.
+     */
+    public List<JsonValue> select(JsonValue value) {
+        return select(value, null);
+    }
+
+    /**
+     * Returns the values selected by this query in the specified JSON value, evaluating the
+     * members of large lists in parallel, among the threads of the specified executor
+     * service. Each list is split into ranges of elements, which are evaluated by tasks that
+     * never wait on each other, so any executor service can be used. The structure must not
+     * be modified while it is being queried.
+     *
+     * @param value the value to query.
+     * @param executor the executor service to evaluate ranges of elements, or {@code null}
+     * to evaluate sequentially.
+     * @return the selected values, in document order.
+     * @throws JsonException if the calling thread was interrupted.
+     */
+    public List<JsonValue> select(JsonValue value, ExecutorService executor)
+    throws JsonException {
+        Context context = new Context(executor);
+        Path root = new Path(null, null, 0);
+        if (first == null) {
+            context.add(value.getObject(), root);
+        } else {
+            first.select(value.getObject(), root, context);
+        }
+        ArrayList<JsonValue> result = new ArrayList<JsonValue>();
+        context.collect(value.getPointer(), result);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+
+    // ----- parsing ----------
+
+    /**
+     * Splits a query into its steps, ignoring slashes within brackets and quotes.
+     */
+    private static List<String> split(String s) throws JsonException {
+        ArrayList<String> result = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int from = 0;
+        for (int n = 0; n < s.length(); n++) {
+            char c = s.charAt(n);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (depth > 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                if (n > 0) { // leading slash ignored
+                    result.add(s.substring(from, n));
+                }
+                from = n + 1;
+            }
+        }
+        if (quote != 0 || depth != 0) {
+            throw new JsonException("Malformed query: " + s);
+        }
+        if (s.length() > 0) {
+            result.add(s.substring(from));
+        }
+        return result;
+    }
+
+    /**
+     * Parses a step, and its predicates.
+     */
+    private static Step parseStep(String s, Step next) throws JsonException {
+        int bracket = s.indexOf('[');
+        String token = (bracket < 0 ? s : s.substring(0, bracket));
+        Step step;
+        if (token.equals("*")) {
+            step = new Wildcard();
+        } else if (token.equals("**")) {
+            step = new Descent();
+        } else {
+            step = new Member(new JsonPointer("/" + token).leaf());
+        }
+        step.next = next;
+        ArrayList<Condition> conditions = new ArrayList<Condition>();
+        while (bracket >= 0) {
+            int close = closing(s, bracket);
+            conditions.add(new Condition(s.substring(bracket + 1, close)));
+            bracket = close + 1;
+            if (bracket == s.length()) {
+                break;
+            } else if (s.charAt(bracket) != '[') {
+                throw new JsonException("Malformed query step: " + s);
+            }
+        }
+        step.conditions = conditions.toArray(new Condition[conditions.size()]);
+        return step;
+    }
+
+    /**
+     * Returns the index of the bracket that closes the bracket at the specified index.
+     */
+    private static int closing(String s, int open) throws JsonException {
+        char quote = 0;
+        for (int n = open + 1; n < s.length(); n++) {
+            char c = s.charAt(n);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ']') {
+                return n;
+            }
+        }
+        throw new JsonException("Malformed query step: " + s);
+    }
+
+    // ----- evaluation ----------
+
+    /**
+     * The path of a value from the root of the queried structure, built as the structure is
+     * traversed; converted to a pointer only for selected values.
+     */
+    private static final class Path {
+
+        final Path parent;
+
+        /** The key of the value, or {@code null} if it is a list element. */
+        final String key;
+
+        final int index;
+
+        Path(Path parent, String key, int index) {
+            this.parent = parent;
+            this.key = key;
+            this.index = index;
+        }
+
+        JsonPointer toPointer(JsonPointer root) {
+            int depth = 0;
+            for (Path p = this; p.parent != null; p = p.parent) {
+                depth++;
+            }
+            String[] tokens = new String[root.size() + depth];
+            for (int n = 0; n < root.size(); n++) {
+                tokens[n] = root.get(n);
+            }
+            for (Path p = this; p.parent != null; p = p.parent) {
+                tokens[root.size() + --depth] = (p.key != null ? p.key : Integer.toString(p.index));
+            }
+            return new JsonPointer(tokens);
+        }
+    }
+
+    /**
+     * Collects the selected values, and the tasks that evaluate ranges of list elements in
+     * parallel, in document order.
+     */
+    private static final class Context {
+
+        /** The executor service to split lists among, or {@code null} if sequential. */
+        final ExecutorService executor;
+
+        /** The selected objects and their paths, alternating, and the futures of tasks. */
+        final ArrayList<Object> results = new ArrayList<Object>();
+
+        Context(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void add(Object object, Path path) {
+            results.add(object);
+            results.add(path);
+        }
+
+        /**
+         * Submits a task for each range of the elements of a list, to be passed to the
+         * specified step.
+         */
+        void split(final List<?> list, final Path path, final Step step) {
+            int pieces = Math.min(Runtime.getRuntime().availableProcessors() * 4,
+             list.size() / MIN_RANGE);
+            int size = list.size();
+            for (int n = 0; n < pieces; n++) {
+                final int from = (int)((long)size * n / pieces);
+                final int to = (int)((long)size * (n + 1) / pieces);
+                results.add(executor.submit(new Callable<Context>() {
+                    @Override public Context call() {
+                        Context context = new Context(null);
+                        for (int i = from; i < to; i++) {
+                            step.member(list.get(i), new Path(path, null, i), context);
+                        }
+                        return context;
+                    }
+                }));
+            }
+        }
+
+        /**
+         * Adds the selected values to a list, waiting for the results of tasks.
+         */
+        @SuppressWarnings("unchecked")
+        void collect(JsonPointer root, List<JsonValue> list) throws JsonException {
+            try {
+                for (int n = 0; n < results.size(); n++) {
+                    Object result = results.get(n);
+                    if (result instanceof Future) {
+                        ((Future<Context>)result).get().collect(root, list); // recursion
+                    } else {
+                        list.add(new JsonValue(result, ((Path)results.get(++n)).toPointer(root)));
+                    }
+                }
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                } else if (cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                throw new JsonException(cause);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new JsonException(ie);
+            } finally {
+                for (Object result : results) {
+                    if (result instanceof Future) {
+                        ((Future<?>)result).cancel(true); // no effect on completed tasks
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A step of the query, which selects values relative to a value.
+     */
+    private abstract static class Step {
+
+        /** The next step, or {@code null} if this is the last. */
+        Step next;
+
+        /** The conditions that the selected values must satisfy. */
+        Condition[] conditions;
+
+        /**
+         * Selects values relative to the specified value.
+         */
+        abstract void select(Object object, Path path, Context context);
+
+        /**
+         * Receives a member of a value whose members are all selected or descended into.
+         */
+        void member(Object object, Path path, Context context) {
+            accept(object, path, context);
+        }
+
+        /**
+         * Passes each member of the specified value to {@link #member}, splitting large
+         * lists among the threads of the executor service.
+         */
+        void members(Object object, Path path, Context context) {
+            if (object instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>)object).entrySet()) {
+                    member(entry.getValue(), new Path(path, (String)entry.getKey(), 0), context);
+                }
+            } else if (object instanceof List) {
+                List<?> list = (List<?>)object;
+                if (context.executor != null && list.size() >= MIN_RANGE * 2) {
+                    context.split(list, path, this);
+                    return;
+                }
+                int size = list.size();
+                for (int n = 0; n < size; n++) {
+                    member(list.get(n), new Path(path, null, n), context);
+                }
+            }
+        }
+
+        /**
+         * Passes a value selected by this step to the next step, if it satisfies the
+         * conditions.
+         */
+        void accept(Object object, Path path, Context context) {
+            for (Condition condition : conditions) {
+                if (!condition.test(object)) {
+                    return;
+                }
+            }
+            if (next == null) {
+                context.add(object, path);
+            } else {
+                next.select(object, path, context);
+            }
+        }
+    }
+
+    /**
+     * Selects the member with a specified key or list index.
+     */
+    private static final class Member extends Step {
+
+        final String token;
+
+        /** The token as a list index, or {@code -1} if it is not a list index. */
+        final int index;
+
+        Member(String token) {
+            this.token = token;
+            int i;
+            try {
+                i = Integer.parseInt(token);
+            } catch (NumberFormatException nfe) {
+                i = -1;
+            }
+            index = i;
+        }
+
+        @Override
+        void select(Object object, Path path, Context context) {
+            if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)object;
+                Object member = map.get(token);
+                if (member != null || map.containsKey(token)) {
+                    accept(member, new Path(path, token, 0), context);
+                }
+            } else if (object instanceof List && index >= 0) {
+                List<?> list = (List<?>)object;
+                if (index < list.size()) {
+                    accept(list.get(index), new Path(path, null, index), context);
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects every member.
+     */
+    private static final class Wildcard extends Step {
+
+        @Override
+        void select(Object object, Path path, Context context) {
+            members(object, path, context);
+        }
+    }
+
+    /**
+     * Selects a value and every one of its descendants.
+     */
+    private static final class Descent extends Step {
+
+        @Override
+        void select(Object object, Path path, Context context) {
+            accept(object, path, context);
+            members(object, path, context);
+        }
+
+        @Override
+        void member(Object object, Path path, Context context) {
+            select(object, path, context); // recursion
+        }
+    }
+
+    /**
+     * A condition on the value identified by a relative pointer.
+     */
+    private static final class Condition {
+
+        /** The reference tokens of the relative pointer. */
+        final String[] tokens;
+
+        /** The operator, or {@code null} to test for existence. */
+        final String operator;
+
+        /** The literal to compare the value with. */
+        final Object literal;
+
+        Condition(String s) throws JsonException {
+            int n = 0;
+            while (n < s.length() && "=!<>".indexOf(s.charAt(n)) < 0) {
+                n++;
+            }
+            tokens = new JsonPointer(s.substring(0, n).trim()).toArray();
+            if (n == s.length()) {
+                operator = null;
+                literal = null;
+                return;
+            }
+            int start = n;
+            while (n < s.length() && "=!<>".indexOf(s.charAt(n)) >= 0) {
+                n++;
+            }
+            operator = s.substring(start, n);
+            if (!operator.equals("=") && !operator.equals("!=") && !operator.equals("<") &&
+            !operator.equals("<=") && !operator.equals(">") && !operator.equals(">=")) {
+                throw new JsonException("Malformed query operator: " + operator);
+            }
+            literal = literal(s.substring(n).trim());
+        }
+
+        private static Object literal(String s) throws JsonException {
+            if (s.length() >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"') &&
+            s.charAt(s.length() - 1) == s.charAt(0)) {
+                return s.substring(1, s.length() - 1);
+            } else if (s.equals("true")) {
+                return Boolean.TRUE;
+            } else if (s.equals("false")) {
+                return Boolean.FALSE;
+            } else if (s.equals("null")) {
+                return null;
+            }
+            try {
+                if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+                    return Long.valueOf(s);
+                }
+                return Double.valueOf(s);
+            } catch (NumberFormatException nfe) {
+                throw new JsonException("Malformed query literal: " + s);
+            }
+        }
+
+        boolean test(Object object) {
+            for (String token : tokens) {
+                if (object instanceof Map) {
+                    Map<?, ?> map = (Map<?, ?>)object;
+                    Object member = map.get(token);
+                    if (member == null && !map.containsKey(token)) {
+                        return false;
+                    }
+                    object = member;
+                } else if (object instanceof List) {
+                    List<?> list = (List<?>)object;
+                    int index;
+                    try {
+                        index = Integer.parseInt(token);
+                    } catch (NumberFormatException nfe) {
+                        return false;
+                    }
+                    if (index < 0 || index >= list.size()) {
+                        return false;
+                    }
+                    object = list.get(index);
+                } else {
+                    return false;
+                }
+            }
+            if (operator == null) {
+                return true;
+            } else if (operator.equals("=")) {
+                return compare(object, literal) == 0;
+            } else if (operator.equals("!=")) {
+                return compare(object, literal) != 0;
+            }
+            int result = compare(object, literal);
+            if (result == UNORDERED) {
+                return false;
+            } else if (operator.equals("<")) {
+                return result < 0;
+            } else if (operator.equals("<=")) {
+                return result <= 0;
+            } else if (operator.equals(">")) {
+                return result > 0;
+            }
+            return result >= 0;
+        }
+    }
+
+    /**
+     * Compares two values. Numbers are compared by value, regardless of type, and strings
+     * lexicographically; other values are only equal or {@link #UNORDERED}.
+     */
+    static int compare(Object o1, Object o2) {
+        if (o1 instanceof Number && o2 instanceof Number) {
+            Number n1 = (Number)o1;
+            Number n2 = (Number)o2;
+            if (integral(n1) && integral(n2)) {
+                long l1 = n1.longValue();
+                long l2 = n2.longValue();
+                return (l1 < l2 ? -1 : (l1 == l2 ? 0 : 1));
+            }
+            double d1 = n1.doubleValue();
+            double d2 = n2.doubleValue();
+            return (d1 < d2 ? -1 : (d1 == d2 ? 0 : (d1 > d2 ? 1 : UNORDERED)));
+        } else if (o1 instanceof String && o2 instanceof String) {
+            int result = ((String)o1).compareTo((String)o2);
+            return (result < 0 ? -1 : (result == 0 ? 0 : 1));
+        } else if (o1 == null ? o2 == null : o1.equals(o2)) {
+            return 0;
+        }
+        return UNORDERED;
+    }
+
+    /**
+     * Returns {@code true} if the number is of an integral type no wider than {@code long}.
+     */
+    static boolean integral(Number n) {
+        return (n instanceof Integer || n instanceof Long || n instanceof Short ||
+         n instanceof Byte);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An iterator over a range of the child values of a JSON value, which can be split into
+ * smaller ranges to be processed in parallel. The range is defined by list index, or by the
+ * position of the key within a snapshot of the keys of a map, so its size is always known
+ * exactly and splitting costs constant time. Child values are returned in order, with their
+ * pointers, and with transformers applied.
+ * <p>
+ * The JSON value must not be modified while it is being iterated. Calling the
+ * {@link #remove()} method will throw {@link UnsupportedOperationException}.
+ *
+ * @see JsonValue#splitIterator()
+ */
+public final class JsonSplitIterator implements Iterator<JsonValue> {
+
+    /** The JSON value whose child values are being iterated. */
+    private final JsonValue parent;
+
+    /** Snapshot of the keys of the parent map, or {@code null} if the parent is a list. */
+    private final String[] keys;
+
+    /** The position of the next child value to return. */
+    private int cursor;
+
+    /** The end of the range, exclusive. */
+    private final int end;
+
+    /**
+     * Constructs an iterator over all of the child values of the specified JSON value.
+     *
+     * @param parent the JSON value whose child values are to be iterated.
+     */
+    JsonSplitIterator(JsonValue parent) {
+        this.parent = parent;
+        if (parent.isMap()) {
+            this.keys = parent.keys().toArray(new String[0]);
+            this.end = keys.length;
+        } else {
+            this.keys = null;
+            this.end = parent.size();
+        }
+    }
+
+    /**
+     * Constructs an iterator over the specified range of child values.
+     */
+    private JsonSplitIterator(JsonValue parent, String[] keys, int from, int to) {
+        this.parent = parent;
+        this.keys = keys;
+        this.cursor = from;
+        this.end = to;
+    }
+
+    /**
+     * Returns the number of child values remaining to be returned by this iterator.
+     */
+    public int size() {
+        return end - cursor;
+    }
+
+    /**
+     * Splits off the first half of the remaining range into a new iterator, leaving this
+     * iterator with the second half. If fewer than two child values remain, the range is not
+     * split and {@code null} is returned.
+     *
+     * @return an iterator over the first half of the range, or {@code null}.
+     */
+    public JsonSplitIterator trySplit() {
+        int mid = (cursor + end) >>> 1;
+        if (mid <= cursor) {
+            return null;
+        }
+        JsonSplitIterator prefix = new JsonSplitIterator(parent, keys, cursor, mid);
+        cursor = mid;
+        return prefix;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor < end;
+    }
+
+    /**
+     * Returns the next child value in the range.
+     *
+     * @throws NoSuchElementException if the range has no more child values.
+     * @throws JsonException if a transformer failed to transform the child value.
+     */
+    @Override
+    public JsonValue next() {
+        if (cursor >= end) {
+            throw new NoSuchElementException();
+        }
+        int n = cursor++;
+        return (keys != null ? parent.get(keys[n]) : parent.get(n));
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
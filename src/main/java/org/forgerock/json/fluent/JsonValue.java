@@ -26,16 +26,16 @@ import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -63,9 +63,87 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
     /** The pointer to the value within a JSON structure. */
     private JsonPointer pointer;
 
+    /** Type tag of a {@code null} value. */
+    private static final int NULL = 0;
+
+    /** Type tag of a {@link Map} value. */
+    private static final int MAP = 1;
+
+    /** Type tag of a {@link List} value. */
+    private static final int LIST = 2;
+
+    /** Type tag of a {@link String} value. */
+    private static final int STRING = 3;
+
+    /** Type tag of a {@link Number} value. */
+    private static final int NUMBER = 4;
+
+    /** Type tag of a {@link Boolean} value. */
+    private static final int BOOLEAN = 5;
+
+    /** Type tag of any other value. */
+    private static final int OTHER = 6;
+
     /** The Java object representing this JSON value. */
     private Object object;
 
+    /** The type tag of the Java object; kept in step with {@link #object}. */
+    private int tag;
+
+    /** The index of values by pointer, or {@code null} if values are not indexed. */
+    private PointerIndex index;
+
+    /** The cache of values resolved by pointer, or {@code null} if values are not cached. */
+    private JsonPointerCache cache;
+
+    /** The number of modifications made through this value; stamps the cached values. */
+    private int modCount;
+
+    /**
+     * Returns the type tag of the specified object.
+     */
+    private static int tagOf(Object object) {
+        if (object == null) {
+            return NULL;
+        } else if (object instanceof Map) {
+            return MAP;
+        } else if (object instanceof List) {
+            return LIST;
+        } else if (object instanceof String) {
+            return STRING;
+        } else if (object instanceof Number) {
+            return NUMBER;
+        } else if (object instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Assigns the Java object representing this JSON value, and computes its type tag. All
+     * assignments of the object must be made through this method.
+     */
+    private void assign(Object object) {
+        this.object = object;
+        this.tag = tagOf(object);
+        modCount++;
+        if (index != null) {
+            index.reset(object);
+        }
+    }
+
+    /**
+     * Records that the structure of this value was modified through its underlying Java
+     * objects, such as by {@link JsonPatch#apply}, discarding its index entries and cached
+     * values.
+     */
+    void modified() {
+        modCount++;
+        if (index != null) {
+            index.invalidateAll();
+        }
+    }
+
     /**
      * Unwraps a {@link JsonValueWrapper} and/or {@link JsonValue} object. If nothing was
      * unwrapped, then {@code null} is returned.
@@ -96,11 +174,12 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     public JsonValue(Object object, JsonPointer pointer,
     Collection<? extends JsonTransformer> transformers) throws JsonException {
-        this.object = object;
+        assign(object);
         this.pointer = pointer;
         JsonValue jv = unwrapObject(object);
         if (jv != null) {
             this.object = jv.object;
+            this.tag = jv.tag;
             if (pointer == null) {
                 this.pointer = jv.pointer;
             }
@@ -169,13 +248,35 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * (and their children) are accessed.
      */
     public Object getWrappedObject() {
-        if (isMap()) {
+        switch (tag) {
+        case MAP:
             return new JsonValueMap(this);
-        } else if (isList()) {
+        case LIST:
             return new JsonValueList(this);
-        } else {
+        default:
+            return object;
+        }
+    }
+
+    /**
+     * Returns the member with the specified key and backing object, as would be returned by
+     * {@code get(key).getWrappedObject()} if {@code wrapped} is {@code true}, or by
+     * {@code get(key).getObject()} otherwise. Avoids constructing a JSON value for members
+     * that require neither transformation nor wrapping.
+     *
+     * @param key the {@code Map} key or {@code List} index of the member.
+     * @param object the backing object of the member.
+     * @param wrapped whether {@code Map} and {@code List} objects should be wrapped.
+     * @return the member object.
+     * @throws JsonException if a transformer failed to transform the member value.
+     */
+    Object member(String key, Object object, boolean wrapped) throws JsonException {
+        if (transformers.size() == 0 && !(object instanceof Map) && !(object instanceof List) &&
+        !(object instanceof JsonValueWrapper) && !(object instanceof JsonValue)) {
             return object;
         }
+        JsonValue member = new JsonValue(object, pointer.child(key), transformers);
+        return (wrapped ? member.getWrappedObject() : member.getObject());
     }
 
     /**
@@ -189,10 +290,10 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @param object the object to set.
      */
     public void setObject(Object object) {
-        this.object = object;
+        assign(object);
         JsonValue jv = unwrapObject(object);
         if (jv != null) {
-            this.object = jv.object;
+            assign(jv.object);
             this.transformers.addAll(jv.transformers);
         }
     }
@@ -281,7 +382,7 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * Returns {@code true} if the JSON value is a {@link Map}.
      */
     public boolean isMap() {
-        return (object != null && object instanceof Map);
+        return (tag == MAP);
     }
 
     /**
@@ -293,14 +394,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     @SuppressWarnings("unchecked")
     public Map<String, Object> asMap() throws JsonValueException {
-        return (object == null ? null : (Map)(expect(Map.class).object));
+        return (tag == NULL ? null : (Map)(tag == MAP ? object : expect(Map.class).object));
     }
 
     /**
      * Returns {@code true} if the JSON value is a {@link List}.
      */
     public boolean isList() {
-        return (object != null && object instanceof List);
+        return (tag == LIST);
     }
 
     /**
@@ -319,6 +420,12 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * the value is {@code null}, this method returns {@code null}. If any of the elements
      * of the list are not {@code null} and not of the specified type,
      * {@code JsonValueException} is thrown.
+     * <p>
+     * If {@code type} is not {@code Object}, the returned list is a view of this value's list
+     * that checks the type of elements as they are added or set, throwing
+     * {@link ClassCastException} if they are not of the specified type. The elements are
+     * verified each time a view is requested, as the list may have been modified by other
+     * means since.
      *
      * @param type the type of object that all elements are expected to be.
      * @return the list value, or {@code} null if no value.
@@ -327,25 +434,43 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     @SuppressWarnings("unchecked")
     public <E> List<E> asList(Class<E> type) throws JsonValueException {
-        if (object != null) {
-            expect(List.class);
+        if (tag != NULL) {
+            if (tag != LIST) {
+                expect(List.class);
+            }
             if (type != Object.class) {
-                List<Object> list = (List)this.object;
-                for (Object element : list) {
+                for (Object element : list()) {
                     if (element != null && !type.isInstance(element)) {
                         throw new JsonValueException(this, "Expecting a List of " + type.getName() + " elements");
                     }
                 }
+                return new TypedList<E>(list(), type);
             }
         }
         return (List)object;
     }
 
+    /**
+     * Returns the object as a {@code Map}, without checking its type tag.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> map() {
+        return (Map)object;
+    }
+
+    /**
+     * Returns the object as a {@code List}, without checking its type tag.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> list() {
+        return (List)object;
+    }
+
     /**
      * Returns {@code true} if the JSON value is a {@link String}.
      */
     public boolean isString() {
-        return (object != null && object instanceof String);
+        return (tag == STRING);
     }
 
     /**
@@ -356,14 +481,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws JsonValueException if the JSON value is not a string.
      */
     public String asString() throws JsonValueException {
-        return (object == null ? null : (String)(expect(String.class).object));
+        return (tag == NULL ? null : (String)(tag == STRING ? object : expect(String.class).object));
     }
 
     /**
      * Returns {@code true} if the JSON value is a {@link Number}.
      */
     public boolean isNumber() {
-        return (object != null && object instanceof Number);
+        return (tag == NUMBER);
     }
 
     /**
@@ -374,7 +499,7 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws JsonValueException if the JSON value is not a number.
      */
     public Number asNumber() throws JsonValueException {
-        return (object == null ? null : (Number)(expect(Number.class).object));
+        return (tag == NULL ? null : (Number)(tag == NUMBER ? object : expect(Number.class).object));
     }
 
     /**
@@ -414,7 +539,7 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * Returns {@code true} if the JSON value is a {@link Boolean}.
      */
     public boolean isBoolean() {
-        return (object != null && object instanceof Boolean);
+        return (tag == BOOLEAN);
     }
 
     /**
@@ -425,14 +550,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws JsonValueException if the JSON value is not a boolean type.
      */
     public Boolean asBoolean() throws JsonValueException {
-        return (object == null ? null : (Boolean)(expect(Boolean.class).object));
+        return (tag == NULL ? null : (Boolean)(tag == BOOLEAN ? object : expect(Boolean.class).object));
     }
 
     /**
      * Returns {@code true} if the value is {@code null}.
      */
     public boolean isNull() {
-        return (object == null);
+        return (tag == NULL);
     }
 
     /**
@@ -573,13 +698,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * Returns the number of values that this JSON value contains.
      */
     public int size() {
-        int result = 0;
-        if (isMap()) {
-            result = asMap().size();
-        } else if (isList()) {
-            result = asList().size();
+        switch (tag) {
+        case MAP:
+            return map().size();
+        case LIST:
+            return list().size();
+        default:
+            return 0;
         }
-        return result;
     }
 
     /**
@@ -607,14 +733,15 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws NullPointerException if {@code key} is {@code null}.
      */
     public boolean isDefined(String key) {
-        boolean result = false;
-        if (isMap()) {
-            result = asMap().containsKey(key);
-        } else if (isList()) {
+        switch (tag) {
+        case MAP:
+            return map().containsKey(key);
+        case LIST:
             int index = toIndex(key);
-            result = (index >= 0 && index < asList().size());
+            return (index >= 0 && index < list().size());
+        default:
+            return false;
         }
-        return result;
     }
 
     /**
@@ -624,13 +751,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @return {@code true} if this value contains the specified member value. 
      */
     public boolean contains(Object object) {
-        boolean result = false;
-        if (isMap()) {
-            result = asMap().containsValue(object);
-        } else if (isList()) {
-            result = asList().contains(object);
+        switch (tag) {
+        case MAP:
+            return map().containsValue(object);
+        case LIST:
+            return list().contains(object);
+        default:
+            return false;
         }
-        return result;
     }
 
     /**
@@ -643,10 +771,10 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     public JsonValue get(String key) throws JsonException {
         Object result = null;
-        if (isMap()) {
-            result = asMap().get(key);
-        } else if (isList()) {
-            List<Object> list = asList();
+        if (tag == MAP) {
+            result = map().get(key);
+        } else if (tag == LIST) {
+            List<Object> list = list();
             int index = toIndex(key);
             if (index >= 0 && index < list.size()) {
                 result = list.get(index);
@@ -669,8 +797,8 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
         if (index < 0) {
             throw new JsonValueException(this, "List index out of range: " + index);
         }
-        if (isList() && index >= 0) {
-            List<Object> list = asList();
+        if (tag == LIST) {
+            List<Object> list = list();
             if (index < list.size()) {
                 result = list.get(index);
             }
@@ -687,6 +815,33 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws JsonException if a transformer failed to transform the resulting value.
      */
     public JsonValue get(JsonPointer pointer) throws JsonException {
+        if (cache == null || transformers.size() > 0) {
+            return resolve(pointer);
+        }
+        int count = modCount;
+        JsonValue result = cache.get(pointer, count);
+        if (result == null) {
+            result = resolve(pointer);
+            cache.put(pointer, result, count);
+        }
+        if (result == null || result == JsonPointerCache.UNDEFINED) {
+            return null;
+        }
+        return new JsonValue(result.object, result.pointer); // cached value must not escape
+    }
+
+    /**
+     * Resolves the specified child value with a pointer, through the index if enabled.
+     */
+    private JsonValue resolve(JsonPointer pointer) throws JsonException {
+        if (index != null && transformers.size() == 0) {
+            Object object = index.get(pointer);
+            if (object == PointerIndex.UNDEFINED) {
+                return null;
+            } else if (object != PointerIndex.UNINDEXED) {
+                return new JsonValue(object, this.pointer.concat(pointer));
+            }
+        }
         JsonValue result = this;
         for (String token : pointer) {
             JsonValue member = result.get(token);
@@ -698,6 +853,67 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
         return result;
     }
 
+    /**
+     * Enables an index of the values in this JSON value's structure, so that
+     * {@link #get(JsonPointer)} finds a previously resolved value with a single hash lookup,
+     * rather than by traversing the structure. If {@code eager} is {@code true}, every value in
+     * the structure is indexed immediately; otherwise, values are indexed as they are
+     * resolved. The index is not used if this value has transformers.
+     * <p>
+     * Modifications made through the {@code put}, {@code add}, {@code remove} and
+     * {@code clear} methods of this value discard the index entries of the modified subtree;
+     * a patch applied to this value with {@link JsonPatch#apply}, or a member removed through
+     * an iterator of a {@link JsonValueMap} of this value, discards all of them.
+     * Modifications made by any other means, including through child values or the
+     * underlying Java objects, are not detected; the index must then be disabled, or
+     * re-enabled to rebuild it. Values can be looked up concurrently by multiple threads, as
+     * long as the structure is not modified.
+     *
+     * @param eager {@code true} to index the whole structure immediately.
+     */
+    public void enableIndex(boolean eager) {
+        index = new PointerIndex(object);
+        if (eager) {
+            index.indexAll();
+        }
+    }
+
+    /**
+     * Disables and discards the index of the values in this JSON value's structure.
+     */
+    public void disableIndex() {
+        index = null;
+    }
+
+    /**
+     * Enables a bounded cache of the values returned by {@link #get(JsonPointer)}, evicting
+     * the least recently used value when full. The cache is not used if this value has
+     * transformers.
+     * <p>
+     * The cache is emptied on the first lookup after a modification made through the
+     * {@code put}, {@code putAll}, {@code add}, {@code remove}, {@code clear}, {@code merge}
+     * or {@code setObject} methods of this value, by applying a patch to this value with
+     * {@link JsonPatch#apply}, or by removing a member through an iterator of a
+     * {@link JsonValueMap} of this value. Modifications made by any other means, including
+     * through child values or the underlying Java objects, are not detected; the cache must
+     * then be cleared.
+     *
+     * @param capacity the maximum number of values to cache.
+     * @return the cache, which exposes hit and miss counts.
+     * @throws IllegalArgumentException if {@code capacity} is not positive.
+     */
+    public JsonPointerCache enableCache(int capacity) {
+        cache = new JsonPointerCache(capacity, modCount);
+        return cache;
+    }
+
+    /**
+     * Disables and discards the cache of values resolved by pointer.
+     */
+    public void disableCache() {
+        cache = null;
+    }
+
     /**
      * Sets the value of the specified member.
      * <p>
@@ -713,9 +929,13 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
         if (key == null) {
             throw new NullPointerException();
         }
-        if (isMap()) {
-            asMap().put(key, object);
-        } else if (isList()) {
+        if (tag == MAP) {
+            map().put(key, object);
+            modCount++;
+            if (index != null) {
+                index.invalidate(key);
+            }
+        } else if (tag == LIST) {
             put(toIndex(key), object);
         } else {
             throw new JsonValueException(this, "Expecting a Map or List");
@@ -733,10 +953,15 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
         List<Object> list = required().asList();
         if (index < 0 || index > list.size()) {
             throw new JsonValueException(this, "List index out of range: " + index);
-        } else if (index == list.size()) { // appending to end of list
+        }
+        modCount++;
+        if (index == list.size()) { // appending to end of list
             list.add(object);
         } else { // replacing existing element
             list.set(index, object);
+            if (this.index != null) {
+                this.index.invalidate(Integer.toString(index));
+            }
         }
     }
 
@@ -756,6 +981,136 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
             jv = jv.get(tokens[n]).required();
         }
         jv.put(tokens[tokens.length - 1], object);
+        modCount++;
+        if (index != null) {
+            index.invalidate(pointer);
+        }
+    }
+
+    /**
+     * Sets the values identified by the specified pointers, relative to this value as root.
+     * Missing intermediate values are created: a {@code List} if the next reference token is
+     * a list index, otherwise a {@code Map}. The pointers are sorted, with list indexes in
+     * numeric order before all other tokens, so that parents are set before their children
+     * and list elements can be appended in order; each prefix shared by consecutive pointers
+     * is then traversed only once. Transformers are not applied.
+     *
+     * @param values the values to set, keyed by the pointers that identify them.
+     * @throws JsonValueException if a pointer traverses a value that is not a {@code Map} or
+     * {@code List}, or a list index is out of range.
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<JsonPointer, ? extends Object> values) throws JsonValueException {
+        String[][] pointers = new String[values.size()][];
+        Object[] objects = new Object[pointers.length];
+        int n = 0;
+        for (JsonPointer pointer : values.keySet()) {
+            pointers[n++] = pointer.toArray();
+        }
+        Arrays.sort(pointers, new Comparator<String[]>() {
+            @Override public int compare(String[] p1, String[] p2) {
+                for (int i = 0; i < p1.length && i < p2.length; i++) {
+                    int i1 = canonicalIndex(p1[i]);
+                    int i2 = canonicalIndex(p2[i]);
+                    int result;
+                    if (i1 >= 0 && i2 >= 0) {
+                        result = (i1 < i2 ? -1 : (i1 == i2 ? 0 : 1));
+                    } else if (i1 >= 0 || i2 >= 0) {
+                        result = (i1 >= 0 ? -1 : 1); // list indexes before other tokens
+                    } else {
+                        result = p1[i].compareTo(p2[i]);
+                    }
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return p1.length - p2.length;
+            }
+        });
+        for (n = 0; n < pointers.length; n++) {
+            objects[n] = values.get(new JsonPointer(pointers[n]));
+        }
+        Object[] path = new Object[16]; // the values on the path of the previous pointer
+        String[] previous = new String[0];
+        for (n = 0; n < pointers.length; n++) {
+            String[] tokens = pointers[n];
+            if (tokens.length == 0) {
+                assign(objects[n]);
+                previous = tokens;
+                continue;
+            }
+            if (path.length <= tokens.length) {
+                path = Arrays.copyOf(path, tokens.length * 2);
+            }
+            path[0] = object;
+            int depth = 0; // number of leading tokens shared with the previous pointer
+            while (depth < previous.length && depth < tokens.length - 1 &&
+            tokens[depth].equals(previous[depth])) {
+                depth++;
+            }
+            for (; depth < tokens.length; depth++) {
+                boolean leaf = (depth == tokens.length - 1);
+                Object parent = path[depth];
+                Object child = (leaf ? objects[n] : null);
+                if (parent instanceof Map) {
+                    Map<String, Object> map = (Map)parent;
+                    if (!leaf) {
+                        child = map.get(tokens[depth]);
+                    }
+                    if (leaf || child == null) {
+                        child = (leaf ? child : newContainer(tokens[depth + 1]));
+                        map.put(tokens[depth], child);
+                    }
+                } else if (parent instanceof List) {
+                    List<Object> list = (List)parent;
+                    int index = toIndex(tokens[depth]);
+                    if (index < 0 || index > list.size()) {
+                        throw new JsonValueException(this, "List index out of range: " +
+                         new JsonPointer(Arrays.copyOf(tokens, depth + 1)));
+                    }
+                    if (!leaf && index < list.size()) {
+                        child = list.get(index);
+                    }
+                    if (leaf || child == null) {
+                        child = (leaf ? child : newContainer(tokens[depth + 1]));
+                        if (index == list.size()) {
+                            list.add(child);
+                        } else {
+                            list.set(index, child);
+                        }
+                    }
+                } else {
+                    throw new JsonValueException(this, "Expecting a Map or List at " +
+                     new JsonPointer(Arrays.copyOf(tokens, depth)));
+                }
+                path[depth + 1] = child;
+            }
+            previous = tokens;
+        }
+        modCount++;
+        if (index != null) {
+            index.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the list index value of the specified token if it is in canonical form, with no
+     * sign or leading zeros; otherwise returns {@code -1}.
+     */
+    private static int canonicalIndex(String token) {
+        int result = toIndex(token);
+        return (result >= 0 && token.equals(Integer.toString(result)) ? result : -1);
+    }
+
+    /**
+     * Returns a new, empty container to hold a member identified by the specified token: a
+     * {@code List} if the token is a list index, otherwise a {@code Map}.
+     */
+    private static Object newContainer(String token) {
+        if (toIndex(token) >= 0) {
+            return ContainerFactory.getDefault().newList(0);
+        }
+        return ContainerFactory.getDefault().newMap(0);
     }
 
     /**
@@ -765,9 +1120,13 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @param key the {@code Map} key or {@code List} index identifying the child value to remove.
      */
     public void remove(String key) {
-        if (isMap()) {
-            asMap().remove(key);
-        } else if (isList()) {
+        if (tag == MAP) {
+            map().remove(key);
+            modCount++;
+            if (index != null) {
+                index.invalidate(key);
+            }
+        } else if (tag == LIST) {
             remove(toIndex(key));
         }
     }
@@ -780,10 +1139,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     @SuppressWarnings("unchecked")
     public void remove(int index) {
-        if (index >= 0 && isList()) {
-            List<Object> list = asList();
+        if (index >= 0 && tag == LIST) {
+            List<Object> list = list();
             if (index < list.size()) {
                 list.remove(index);
+                modCount++;
+                if (this.index != null) {
+                    this.index.invalidateAll(); // subsequent elements have shifted
+                }
             }
         }
     }
@@ -792,10 +1155,14 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * Removes all child values from this JSON value, if it has any.
      */
     public void clear() throws JsonValueException {
-        if (isMap()) {
-            asMap().clear();
-        } else if (isList()) {
-            asList().clear();
+        if (tag == MAP) {
+            map().clear();
+        } else if (tag == LIST) {
+            list().clear();
+        }
+        modCount++;
+        if (index != null) {
+            index.invalidateAll();
         }
     }
 
@@ -811,13 +1178,17 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * @throws JsonValueException if not a {@code Map} or {@code List}, the {@code Map} key already exists, or the {@code List} index is out of range.
      */
     public void add(String key, Object object) throws JsonValueException {
-        if (isMap()) {
-            Map<String, Object> map = asMap();
+        if (tag == MAP) {
+            Map<String, Object> map = map();
             if (map.containsKey(key)) {
                 throw new JsonValueException(this, "Map key " + key + " already exists");
             }
             map.put(key, object);
-        } else if (isList()) {
+            modCount++;
+            if (index != null) {
+                index.invalidate(key);
+            }
+        } else if (tag == LIST) {
             add(toIndex(key), object);
         } else {
             throw new JsonValueException(this, "Expecting a Map or List");
@@ -838,23 +1209,55 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
             throw new JsonValueException(this, "List index out of range: " + index);
         }
         list.add(index, object);
+        modCount++;
+        if (this.index != null) {
+            this.index.invalidateAll(); // subsequent elements have shifted
+        }
     }
 
     /**
      * Returns the set of keys for this JSON value's child values. If this value is a
      * {@code Map}, then the order of the resulting keys is undefined. If there are no child
      * values, this method returns an empty set.
+     * <p>
+     * If this value is a {@code Map}, the returned set is a live, read-only view of the map's
+     * string keys; no keys are copied, and changes to the map are reflected in the set. The
+     * map must not be modified, such as with {@link #remove(String)}, while the set is being
+     * iterated; to remove members while iterating, iterate over a copy of the set.
      */
     public Set<String> keys() {
         Set<String> result;
-        if (isMap()) {
-            result = new LinkedHashSet<String>();
-            for (Object key : asMap().keySet()) {
-                if (key instanceof String) {
-                    result.add((String)key); // only expose string keys in map
+        if (tag == MAP) {
+            final Map<?, ?> map = (Map<?, ?>)object;
+            result = new AbstractSet<String>() {
+                @Override public int size() {
+                    int size = 0;
+                    for (Object key : map.keySet()) {
+                        if (key instanceof String) {
+                            size++;
+                        }
+                    }
+                    return size;
                 }
-            }
-        } else if (isList()) {
+                @Override public boolean contains(Object o) {
+                    return (o instanceof String && map.containsKey(o));
+                }
+                @Override public Iterator<String> iterator() {
+                    return new Iterator<String>() {
+                        Iterator<Map.Entry<String, Object>> i = new StringEntryIterator(map);
+                        @Override public boolean hasNext() {
+                            return i.hasNext();
+                        }
+                        @Override public String next() {
+                            return i.next().getKey();
+                        }
+                        @Override public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        } else if (tag == LIST) {
             result = new AbstractSet<String>() {
                 RangeSet range = new RangeSet(size()); // 0 through size-1 inclusive
                 @Override public int size() {
@@ -903,10 +1306,10 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      */
     @Override
     public Iterator<JsonValue> iterator() {
-        if (isList()) { // optimize for list
+        if (tag == LIST) { // optimize for list
             return new Iterator<JsonValue>() {
                 int cursor = 0;
-                Iterator<Object> i = asList().iterator();
+                Iterator<Object> i = list().iterator();
                 @Override public boolean hasNext() {
                     return i.hasNext();
                 }
@@ -918,22 +1321,37 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
                     throw new UnsupportedOperationException();
                 }
             };
-        } else {
+        } else if (tag == MAP) {
             return new Iterator<JsonValue>() {
-                Iterator<String> i = keys().iterator();
+                Iterator<Map.Entry<String, Object>> i = new StringEntryIterator(map());
                 @Override public boolean hasNext() {
                     return i.hasNext();
                 }
                 @Override public JsonValue next() {
-                    return get(i.next());
+                    Map.Entry<String, Object> entry = i.next();
+                    return new JsonValue(entry.getValue(), pointer.child(entry.getKey()), transformers);
                 }
                 @Override public void remove() {
                     throw new UnsupportedOperationException();
                 }
             };
+        } else {
+            return Collections.<JsonValue>emptyList().iterator();
         }
     }
 
+    /**
+     * Returns an iterator over the child values that this JSON value contains, which can be
+     * split into ranges to be processed in parallel. The iterator knows its exact size, and
+     * splits in constant time by list index or, for a {@code Map}, by position within a
+     * snapshot of the keys. Child values are returned in the same order as {@link #iterator()}
+     * and carry their pointers. If this value is neither a {@code Map} nor a {@code List},
+     * the iterator is empty.
+     */
+    public JsonSplitIterator splitIterator() {
+        return new JsonSplitIterator(this);
+    }
+
     /**
      * Returns a deep copy of this JSON value.
      * <p>
@@ -945,34 +1363,402 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
      * structures containing cyclic references. Processing such a structure will result in a
      * {@link StackOverflowError} being thrown.
      */
+    @SuppressWarnings("unchecked")
     public JsonValue copy() {
 // TODO: track original values to resolve cyclic references
         JsonValue result = new JsonValue(object, pointer); // start with shallow copy
-        if (this.isMap()) {
-            Map<String, Object> map = null;
-            if (this.getObject() instanceof LinkedHashMap) {
-                map = new LinkedHashMap<String, Object>(size());
-            } else {
-                map = new HashMap<String, Object>(size());
-            }
+        if (tag == MAP) {
+            Map<String, Object> map = (Map)emptyCopy();
             for (String key : keys()) {
-                map.put(key, this.get(key).copy().getObject()); // recursion
+                map.put(KeyDictionary.pooled(key), this.get(key).copy().getObject()); // recursion
             }
-            result.object = map;
-        } else if (isList()) {
-            ArrayList<Object> list = new ArrayList<Object>(size());
+            result.assign(map);
+        } else if (tag == LIST) {
+            List<Object> list = (List)emptyCopy();
             for (JsonValue element : this) {
                 list.add(element.copy().getObject()); // recursion
             }
-            result.object = list;
+            result.assign(list);
         }
         return result;
     }
 
+    /**
+     * Returns a deep copy of this JSON value, distributing the work among the threads of the
+     * specified executor service. The result is identical to that of {@link #copy()},
+     * including the order of members. Large structures are split into subtrees and ranges
+     * of sibling members, which are copied by separate tasks; the calling thread waits for
+     * the tasks to complete and assembles their results. Tasks never wait on each other, so
+     * any executor service—including a fork-join pool—can be used.
+     * <p>
+     * Any transformers must be safe to call concurrently from multiple threads, and the
+     * structure must not be modified while it is being copied.
+     *
+     * @param executor the executor service to perform the copy.
+     * @return the deep copy of this JSON value.
+     * @throws JsonException if a transformer failed, or the calling thread was interrupted.
+     */
+    public JsonValue copy(ExecutorService executor) throws JsonException {
+        return new JsonValue(new ParallelTraversal(executor, null).run(this), pointer);
+    }
+
+    /**
+     * Returns a new, empty {@code Map} or {@code List} of the type used to hold a deep copy
+     * of this value's members, or {@code null} if this value is neither. The container is
+     * created by the default {@link ContainerFactory}.
+     */
+    Object emptyCopy() {
+        if (tag == MAP) {
+            return ContainerFactory.getDefault().newMap(size());
+        } else if (tag == LIST) {
+            return ContainerFactory.getDefault().newList(size());
+        }
+        return null;
+    }
+
+    /**
+     * Visits this JSON value and its members, depth-first, in the order the members are
+     * returned by {@link #iterator()}. The members of a value are only visited if the
+     * visitor returns {@code true} for the value.
+     *
+     * @param visitor the visitor to apply to each value.
+     * @throws JsonException if the visitor or a transformer failed.
+     */
+    public void visit(JsonVisitor visitor) throws JsonException {
+        if (visitor.visit(this)) {
+            for (JsonValue member : this) {
+                member.visit(visitor); // recursion
+            }
+        }
+    }
+
+    /**
+     * Visits this JSON value and its members, distributing the work among the threads of
+     * the specified executor service. Each value is visited exactly once, and a value's
+     * members are only visited if the visitor returns {@code true} for the value. A value
+     * is always visited before its members; beyond that, the order in which values are
+     * visited is undefined.
+     * <p>
+     * The visitor and any transformers must be safe to call concurrently from multiple
+     * threads, and the structure must not be modified while it is being visited.
+     *
+     * @param visitor the visitor to apply to each value.
+     * @param executor the executor service to perform the visit.
+     * @throws JsonException if the visitor or a transformer failed, or the calling thread was interrupted.
+     */
+    public void visit(JsonVisitor visitor, ExecutorService executor) throws JsonException {
+        new ParallelTraversal(executor, visitor).run(this);
+    }
+
+    /**
+     * Returns a lazy deep copy of this JSON value. The copy initially shares the structure
+     * of this value; a {@code Map} or {@code List} is copied only upon the first attempt to
+     * modify it through the copy, whether through this API, a {@link JsonValueMap} or
+     * {@link JsonValueList} view, or the raw object. Copies which are only read therefore
+     * cost a constant amount of time and space. The copy may be read concurrently by multiple
+     * threads, but must not be modified concurrently with any other access.
+     * <p>
+     * The original value must not be modified while the copy is in use, as such
+     * modifications may be visible through the copy. If this value has transformers, this
+     * method is equivalent to {@link #copy()}, as transformations must be applied while
+     * traversing the value's members.
+     */
+    public JsonValue lazyCopy() {
+        if (transformers.size() > 0) {
+            return copy();
+        }
+        return new JsonValue(CopyOnWriteMap.wrap(object), pointer);
+    }
+
+    /**
+     * Returns a deep copy of this JSON value, with all {@code Map} and {@code List} objects
+     * replaced with {@link PersistentMap} and {@link PersistentList} objects respectively.
+     * The {@link #with} and {@link #without} methods of the resulting value produce new
+     * versions which share all unaffected structure.
+     * <p>
+     * This method applies all transformations while traversing the values's members and
+     * their members, and so on. Consequently, the returned copy does not include the
+     * transformers from this value.
+     */
+    public JsonValue persistentCopy() {
+        JsonValue result = new JsonValue(object, pointer); // start with shallow copy
+        if (tag == MAP) {
+            PersistentMap map = PersistentMap.EMPTY;
+            for (String key : keys()) {
+                map = map.plus(key, get(key).persistentCopy().getObject()); // recursion
+            }
+            result.assign(map);
+        } else if (tag == LIST) {
+            PersistentList list = PersistentList.EMPTY;
+            for (JsonValue element : this) {
+                list = list.plus(element.persistentCopy().getObject()); // recursion
+            }
+            result.assign(list);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new version of this JSON value, with the value identified by the specified
+     * pointer set to the specified object. This JSON value is not modified. Only the
+     * {@code Map} and {@code List} objects on the path to the value are copied; all other
+     * members are shared with this value. Persistent maps and lists are updated in
+     * {@code O(log n)}; other maps and lists are shallow copied.
+     * <p>
+     * As with {@link #put(JsonPointer, Object)}, if setting the value would require the
+     * creation of a new object or list, a {@code JsonValueException} will be thrown. This
+     * method does not apply transformations; the new version inherits this value's
+     * transformers.
+     *
+     * @param pointer identifies the value to set.
+     * @param object the Java object value to set.
+     * @return the new version of this JSON value.
+     * @throws JsonValueException if the specified pointer is invalid.
+     */
+    public JsonValue with(JsonPointer pointer, Object object) throws JsonValueException {
+        return version(with(this.object, pointer.toArray(), 0, object));
+    }
+
+    /**
+     * Returns a new version of this JSON value, without the value identified by the
+     * specified pointer. This JSON value is not modified. Only the {@code Map} and
+     * {@code List} objects on the path to the value are copied; all other members are
+     * shared with this value. If the specified value is not defined, the new version shares
+     * this value's object.
+     *
+     * @param pointer identifies the value to remove.
+     * @return the new version of this JSON value.
+     * @throws JsonValueException if the pointer identifies this JSON value.
+     */
+    public JsonValue without(JsonPointer pointer) throws JsonValueException {
+        if (pointer.size() == 0) {
+            throw new JsonValueException(this, "Cannot remove the root value");
+        }
+        return version(without(this.object, pointer.toArray(), 0));
+    }
+
+    /**
+     * Returns a new JSON value with the specified object, and this value's pointer and
+     * transformers, without applying the transformers.
+     */
+    private JsonValue version(Object object) {
+        JsonValue result = new JsonValue(object, this.pointer);
+        result.transformers.addAll(this.transformers); // avoid re-applying transformers
+        return result;
+    }
+
+    /**
+     * Returns a shallow copy of the specified {@code Map} or {@code List}.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object shallowCopy(Object object) {
+        if (object instanceof Map) {
+            return ContainerFactory.getDefault().copyOf((Map)object);
+        } else {
+            return ContainerFactory.getDefault().copyOf((List)object);
+        }
+    }
+
+    /**
+     * Returns a new version of the specified object, with the value identified by the
+     * tokens (starting at the specified position) set to the specified value.
+     */
+    @SuppressWarnings("unchecked")
+    private Object with(Object parent, String[] tokens, int n, Object value) {
+        if (n == tokens.length) {
+            return value;
+        }
+        boolean leaf = (n == tokens.length - 1);
+        if (parent instanceof Map) {
+            Map<String, Object> map = (Map)parent;
+            Object child = null;
+            if (!leaf) {
+                child = map.get(tokens[n]);
+                if (child == null) {
+                    throw new JsonValueException(subvalue(null, tokens, n + 1), "Expecting a value");
+                }
+            }
+            child = with(child, tokens, n + 1, value); // recursion
+            if (map instanceof PersistentMap) {
+                return ((PersistentMap)map).plus(tokens[n], child);
+            }
+            map = (Map)shallowCopy(map);
+            map.put(tokens[n], child);
+            return map;
+        } else if (parent instanceof List) {
+            List<Object> list = (List)parent;
+            int index = toIndex(tokens[n]);
+            if (index < 0 || index > list.size() || (!leaf && index == list.size())) {
+                throw new JsonValueException(subvalue(parent, tokens, n), "List index out of range: " + tokens[n]);
+            }
+            Object child = with(leaf ? null : list.get(index), tokens, n + 1, value); // recursion
+            if (list instanceof PersistentList) {
+                return ((PersistentList)list).with(index, child);
+            }
+            list = (List)shallowCopy(list);
+            if (index == list.size()) {
+                list.add(child);
+            } else {
+                list.set(index, child);
+            }
+            return list;
+        }
+        if (parent == null) {
+            throw new JsonValueException(subvalue(parent, tokens, n), "Expecting a value");
+        }
+        throw new JsonValueException(subvalue(parent, tokens, n), "Expecting a Map or List");
+    }
+
+    /**
+     * Returns a new version of the specified object, without the value identified by the
+     * tokens (starting at the specified position). If the value is not defined, the
+     * specified object is returned.
+     */
+    @SuppressWarnings("unchecked")
+    private Object without(Object parent, String[] tokens, int n) {
+        boolean leaf = (n == tokens.length - 1);
+        if (parent instanceof Map) {
+            Map<String, Object> map = (Map)parent;
+            if (!map.containsKey(tokens[n])) {
+                return parent;
+            }
+            if (leaf) {
+                if (map instanceof PersistentMap) {
+                    return ((PersistentMap)map).minus(tokens[n]);
+                }
+                map = (Map)shallowCopy(map);
+                map.remove(tokens[n]);
+                return map;
+            }
+            Object child = map.get(tokens[n]);
+            Object result = without(child, tokens, n + 1); // recursion
+            if (result == child) {
+                return parent;
+            } else if (map instanceof PersistentMap) {
+                return ((PersistentMap)map).plus(tokens[n], result);
+            }
+            map = (Map)shallowCopy(map);
+            map.put(tokens[n], result);
+            return map;
+        } else if (parent instanceof List) {
+            List<Object> list = (List)parent;
+            int index = toIndex(tokens[n]);
+            if (index < 0 || index >= list.size()) {
+                return parent;
+            }
+            if (leaf) {
+                if (list instanceof PersistentList) {
+                    return ((PersistentList)list).minus(index);
+                }
+                list = (List)shallowCopy(list);
+                list.remove(index);
+                return list;
+            }
+            Object child = list.get(index);
+            Object result = without(child, tokens, n + 1); // recursion
+            if (result == child) {
+                return parent;
+            } else if (list instanceof PersistentList) {
+                return ((PersistentList)list).with(index, result);
+            }
+            list = (List)shallowCopy(list);
+            list.set(index, result);
+            return list;
+        }
+        return parent;
+    }
+
+    /**
+     * Merges the specified patch into this JSON value, in place, following the semantics of
+     * JSON Merge Patch (RFC 7386): members of a {@code Map} patch are merged recursively into
+     * the corresponding members of this value, members whose patch value is {@code null} are
+     * removed, and any other patch value replaces the target value. The {@code Map} objects
+     * of this value are modified directly; members added from the patch are copied, so this
+     * value shares no structure with the patch. Transformers are not applied.
+     *
+     * @param patch the merge patch to apply.
+     * @throws UnsupportedOperationException if a {@code Map} to be modified is immutable.
+     */
+    public void merge(JsonValue patch) {
+        assign(merge(this.object, patch.getObject(), true));
+    }
+
+    /**
+     * Returns a new version of this JSON value, with the specified patch merged into it
+     * following the semantics of JSON Merge Patch (RFC 7386). This JSON value is not modified.
+     * Only the {@code Map} objects that the patch modifies are copied; all other members are
+     * shared with this value. Persistent maps are versioned rather than copied. If the patch
+     * modifies nothing, the new version shares this value's object.
+     *
+     * @param patch the merge patch to apply.
+     * @return the new version of this JSON value.
+     */
+    public JsonValue merged(JsonValue patch) {
+        return version(merge(this.object, patch.getObject(), false));
+    }
+
+    /**
+     * Returns the result of merging the specified patch into the specified target. If
+     * {@code inPlace} is {@code true}, target maps are modified; otherwise, they are copied
+     * when first modified.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object merge(Object target, Object patch, boolean inPlace) {
+        if (!(patch instanceof Map)) {
+            return (patch instanceof List ? new JsonValue(patch).copy().getObject() : patch);
+        }
+        Map<String, Object> map = null; // the map to modify, once known
+        if (!(target instanceof Map)) {
+            map = ContainerFactory.getDefault().newMap(((Map)patch).size());
+            target = map;
+        } else if (inPlace) {
+            map = (Map)target;
+        }
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>)patch).entrySet()) {
+            String key = entry.getKey();
+            Map<String, Object> current = (map != null ? map : (Map)target);
+            if (entry.getValue() == null) {
+                if (!current.containsKey(key)) {
+                    continue;
+                } else if (current instanceof PersistentMap) {
+                    map = ((PersistentMap)current).minus(key);
+                } else {
+                    map = (map != null ? map : ContainerFactory.getDefault().copyOf(current));
+                    map.remove(key);
+                }
+                continue;
+            }
+            Object child = current.get(key);
+            Object merged = merge(child, entry.getValue(), inPlace); // recursion
+            if ((merged == child || (!CopyOnWriteMap.isContainer(merged) && merged.equals(child)))
+            && (child != null || current.containsKey(key))) {
+                continue; // merged in place, or unchanged
+            } else if (current instanceof PersistentMap) {
+                map = ((PersistentMap)current).plus(key, merged);
+            } else {
+                map = (map != null ? map : ContainerFactory.getDefault().copyOf(current));
+                map.put(key, merged);
+            }
+        }
+        return (map != null ? map : target);
+    }
+
+    /**
+     * Returns a JSON value for the specified object, with a pointer composed of this value's
+     * pointer and the specified number of tokens. Used for reporting exceptions.
+     */
+    private JsonValue subvalue(Object object, String[] tokens, int length) {
+        JsonPointer p = this.pointer;
+        for (int n = 0; n < length; n++) {
+            p = p.child(tokens[n]);
+        }
+        return new JsonValue(object, p);
+    }
+
     /**
      * Returns a shallow copy of this JSON value. If this JSON value contains a {@code Map}
      * or a {@code List} object, the returned JSON value will contain a shallow copy of the
-     * original contained object.
+     * original contained object, created by the default {@link ContainerFactory}.
      * <p>
      * The new value's members can be modified without affecting the original value.
      * Modifying the member's members will almost certainly affect the original value. To
@@ -985,10 +1771,10 @@ public class JsonValue implements Cloneable, Iterable<JsonValue> {
     public JsonValue clone() {
         JsonValue result = new JsonValue(this.object, this.pointer);
         result.transformers.addAll(this.transformers); // avoid re-applying transformers
-        if (isMap()) {
-            result.object = new HashMap<String, Object>(this.asMap());
-        } else if (isList()) {
-            result.object = new ArrayList<Object>(this.asList());
+        if (tag == MAP) {
+            result.assign(ContainerFactory.getDefault().copyOf(map()));
+        } else if (tag == LIST) {
+            result.assign(ContainerFactory.getDefault().copyOf(list()));
         }
         return result;
     }
@@ -33,6 +33,9 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
     /** TODO: Description. */
     private JsonValue jsonValue;
 
+    /** Wrappers of member maps and lists, reused while the members are unchanged. */
+    private final WrapperCache cache = new WrapperCache();
+
     /**
      * TODO: Description.
      *
@@ -69,7 +72,7 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
         if (index < 0 || index >= jsonValue.size()) {
             throw new IndexOutOfBoundsException();
         }
-        return (E)(jsonValue.get(index).getWrappedObject());
+        return (E)(cache.get(jsonValue, Integer.toString(index), index, jsonValue.asList().get(index)));
     }
 
     /**
@@ -85,6 +88,7 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
     public E set(int index, E element) {
         E result = get(index); // includes index range check
         jsonValue.put(index, element);
+        cache.remove(index);
         return result;
     }
 
@@ -101,6 +105,8 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
             throw new IndexOutOfBoundsException();
         }
         jsonValue.add(index, element);
+        cache.clear(); // subsequent elements shifted
+        modCount++;
     }
 
     /**
@@ -114,6 +120,8 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
     public E remove(int index) {
         E result = get(index); // includes index range check
         jsonValue.remove(index);
+        cache.clear(); // subsequent elements shifted
+        modCount++;
         return result;
     }
 
@@ -123,6 +131,8 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
     @Override
     public void clear() {
         jsonValue.clear();
+        cache.clear();
+        modCount++;
     }
 
     /**
@@ -133,7 +143,7 @@ public class JsonValueList<E> extends AbstractList<E> implements JsonValueWrappe
      */
     @Override
     public boolean equals(Object o) {
-        return jsonValue.getObject().equals(o);
+        return StructuralEquality.equal(jsonValue.getObject(), o);
     }
 
     /**
@@ -17,10 +17,10 @@
 package org.forgerock.json.fluent;
 
 // Java SE
-import java.util.AbstractMap;
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -34,6 +34,9 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
     /** TODO: Description. */
     private JsonValue jsonValue;
 
+    /** Wrappers of member maps and lists, reused while the members are unchanged. */
+    private final WrapperCache cache = new WrapperCache();
+
     /**
      * TODO: Description.
      *
@@ -98,7 +101,7 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
     public Object get(Object key) {
         Object result = null;
         if (key != null && key instanceof String) {
-            result = jsonValue.get((String)key).getWrappedObject();
+            result = cache.get(jsonValue, (String)key, key, jsonValue.asMap().get(key));
         }
         return result;
     }
@@ -114,6 +117,7 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
     public Object put(String key, Object value) {
         Object result = get(key);
         jsonValue.put(key, value);
+        cache.remove(key);
         return result;
     }
 
@@ -128,6 +132,7 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
         Object result = get(key);
         if (key instanceof String) {
             jsonValue.remove((String)key);
+            cache.remove(key);
         }
         return result;
     }
@@ -141,6 +146,7 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
     public void putAll(Map<? extends String, ? extends Object> m) {
         for (Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
             jsonValue.put(entry.getKey(), entry.getValue());
+            cache.remove(entry.getKey());
         }
     }
 
@@ -150,38 +156,196 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
     @Override
     public void clear() {
         jsonValue.clear();
+        cache.clear();
     }
 
     /**
-     * Returns a {@code Set} view of the keys contained in this map.
+     * Returns a {@code Set} view of the keys contained in this map. The set is backed by the
+     * map, so changes to the map are reflected in the set. Keys can be removed from the
+     * map through the set. Keys of the backing map that are not strings are skipped.
      */
     @Override
     public Set<String> keySet() {
-        return jsonValue.keys();
+        return new AbstractSet<String>() {
+            @Override public int size() {
+                return jsonValue.size();
+            }
+            @Override public boolean contains(Object o) {
+                return containsKey(o);
+            }
+            @Override public boolean remove(Object o) {
+                boolean result = containsKey(o);
+                JsonValueMap.this.remove(o);
+                return result;
+            }
+            @Override public void clear() {
+                JsonValueMap.this.clear();
+            }
+            @Override public Iterator<String> iterator() {
+                return new MemberIterator<String>() {
+                    @Override String next(Map.Entry<String, Object> entry) {
+                        return entry.getKey();
+                    }
+                };
+            }
+        };
     }
 
     /**
-     * Returns a Collection view of the values contained in this map.
+     * Returns a {@code Collection} view of the values contained in this map. The collection
+     * is backed by the map, so changes to the map are reflected in the collection. Values
+     * are transformed as they are returned by the collection's iterator.
      */
     @Override
     public Collection<Object> values() {
-        ArrayList<Object> result = new ArrayList<Object>(size());
-        for (JsonValue jv : jsonValue) {
-            result.add(jv.getObject());
-        }
-        return result;
+        return new AbstractCollection<Object>() {
+            @Override public int size() {
+                return jsonValue.size();
+            }
+            @Override public void clear() {
+                JsonValueMap.this.clear();
+            }
+            @Override public Iterator<Object> iterator() {
+                return new MemberIterator<Object>() {
+                    @Override Object next(Map.Entry<String, Object> entry) {
+                        return jsonValue.member(entry.getKey(), entry.getValue(), false);
+                    }
+                };
+            }
+        };
     }
 
     /**
-     * Returns a {@code Set} view of the mappings contained in this map.
+     * Returns a {@code Set} view of the mappings contained in this map. The set is backed by
+     * the map, so changes to the map are reflected in the set. The value of each entry is
+     * only transformed and wrapped when it is first read.
      */
     @Override
     public Set<Map.Entry<String, Object>> entrySet() {
-        HashSet<Map.Entry<String, Object>> result = new HashSet<Map.Entry<String, Object>>(size());
-        for (String key : jsonValue.keys()) {
-            result.add(new AbstractMap.SimpleEntry<String, Object>(key, get(key)));
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override public int size() {
+                return jsonValue.size();
+            }
+            @Override public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+                Object value = get(e.getKey());
+                return (containsKey(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue())));
+            }
+            @Override public void clear() {
+                JsonValueMap.this.clear();
+            }
+            @Override public Iterator<Map.Entry<String, Object>> iterator() {
+                return new MemberIterator<Map.Entry<String, Object>>() {
+                    @Override Map.Entry<String, Object> next(Map.Entry<String, Object> entry) {
+                        return new Entry(entry);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An iterator over the members of the backing map, which skips any keys that are not
+     * strings. Removing a member through the iterator removes it from the backing map,
+     * discards its cached wrapper, and notifies the JSON value of the modification; it must
+     * be done before calling {@code hasNext()}.
+     */
+    private abstract class MemberIterator<T> implements Iterator<T> {
+
+        /** The iterator over the entries of the backing map. */
+        private final StringEntryIterator i = new StringEntryIterator(jsonValue.asMap());
+
+        /** The key of the last returned member. */
+        private String last;
+
+        /**
+         * Returns the element of the view for the specified entry of the backing map.
+         */
+        abstract T next(Map.Entry<String, Object> entry);
+
+        @Override
+        public boolean hasNext() {
+            return i.hasNext();
+        }
+
+        @Override
+        public T next() {
+            Map.Entry<String, Object> entry = i.next();
+            last = entry.getKey();
+            return next(entry);
+        }
+
+        @Override
+        public void remove() {
+            i.remove();
+            cache.remove(last);
+            jsonValue.modified();
+        }
+    }
+
+    /**
+     * A map entry whose value is transformed and wrapped when first read.
+     */
+    private class Entry implements Map.Entry<String, Object> {
+
+        /** The entry of the backing map. */
+        private final Map.Entry<String, Object> entry;
+
+        /** The transformed and wrapped value; {@code null} until first read. */
+        private Object value;
+
+        /** Indicates the value has been read. */
+        private boolean read;
+
+        Entry(Map.Entry<String, Object> entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public String getKey() {
+            return entry.getKey();
+        }
+
+        @Override
+        public Object getValue() {
+            if (!read) {
+                value = cache.get(jsonValue, entry.getKey(), entry.getKey(), entry.getValue());
+                read = true;
+            }
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object result = getValue();
+            JsonValueMap.this.put(entry.getKey(), value);
+            read = false;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+            Object v = getValue();
+            return (getKey().equals(e.getKey()) && (v == null ? e.getValue() == null : v.equals(e.getValue())));
+        }
+
+        @Override
+        public int hashCode() {
+            Object v = getValue();
+            return getKey().hashCode() ^ (v == null ? 0 : v.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
         }
-        return result;
     }
 
     /**
@@ -192,7 +356,7 @@ public class JsonValueMap implements JsonValueWrapper, Map<String, Object> {
      */
     @Override
     public boolean equals(Object o) {
-        return jsonValue.getObject().equals(o);
+        return StructuralEquality.equal(jsonValue.getObject(), o);
     }
 
     /**
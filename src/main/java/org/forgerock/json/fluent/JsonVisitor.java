@@ -0,0 +1,34 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+/**
+ * Interface for visiting the values of a JSON structure. Used by the
+ * {@link JsonValue#visit(JsonVisitor)} methods.
+ */
+public interface JsonVisitor {
+
+    /**
+     * Visits the specified JSON value. If the value is visited in parallel with other values,
+     * this method may be called concurrently by multiple threads.
+     *
+     * @param value the JSON value being visited.
+     * @return {@code true} if the members of the value are to be visited.
+     * @throws JsonException if an exception occurred visiting the value.
+     */
+    boolean visit(JsonValue value) throws JsonException;
+}
@@ -0,0 +1,130 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A pool of JSON object member keys, so that equal keys held in many structures share a
+ * single {@code String} instance. Keys are weakly referenced, and are discarded from the
+ * pool once no structure holds them. The pool is bounded: once it is full, keys that are not
+ * already pooled are returned as-is.
+ * <p>
+ * The pool is divided into independently locked segments, so it can be used by many threads
+ * concurrently. Interning is opt-in: keys are only routed through the dictionary set with
+ * {@link #setDefault}, and {@link JsonValue#copy()} does so as it copies maps.
+ */
+public final class KeyDictionary {
+
+    /** The number of segments in the pool; a power of two. */
+    private static final int SEGMENTS = 16;
+
+    /** The dictionary in use, or {@code null} if keys are not interned. */
+    private static volatile KeyDictionary instance;
+
+    /** The segments of the pool, selected by key hash. */
+    private final WeakHashMap<String, WeakReference<String>>[] segments;
+
+    /** The maximum number of keys held by each segment. */
+    private final int limit;
+
+    /**
+     * Constructs a key dictionary.
+     *
+     * @param capacity the maximum number of keys to hold in the pool.
+     * @throws IllegalArgumentException if {@code capacity} is negative.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public KeyDictionary(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        segments = new WeakHashMap[SEGMENTS];
+        for (int n = 0; n < SEGMENTS; n++) {
+            segments[n] = new WeakHashMap<String, WeakReference<String>>();
+        }
+        limit = (capacity + SEGMENTS - 1) / SEGMENTS;
+    }
+
+    /**
+     * Returns the dictionary that keys are routed through, or {@code null} if keys are not
+     * interned.
+     */
+    public static KeyDictionary getDefault() {
+        return instance;
+    }
+
+    /**
+     * Sets the dictionary that keys are routed through.
+     *
+     * @param dictionary the dictionary to use, or {@code null} to stop interning keys.
+     */
+    public static void setDefault(KeyDictionary dictionary) {
+        instance = dictionary;
+    }
+
+    /**
+     * Returns the key interned by the default dictionary, or the key itself if there is no
+     * default dictionary.
+     */
+    static String pooled(String key) {
+        KeyDictionary dictionary = instance;
+        return (dictionary != null ? dictionary.intern(key) : key);
+    }
+
+    /**
+     * Returns the pooled instance of the specified key, or the key itself if no equal key is
+     * pooled. If there is room in the pool, the key is added to it.
+     *
+     * @param key the key to intern.
+     * @return the pooled key, or {@code key}.
+     */
+    public String intern(String key) {
+        if (key == null) {
+            return null;
+        }
+        int h = key.hashCode();
+        WeakHashMap<String, WeakReference<String>> segment =
+         segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            WeakReference<String> ref = segment.get(key);
+            String result = (ref != null ? ref.get() : null);
+            if (result != null) {
+                return result;
+            }
+            if (segment.size() < limit) {
+                segment.put(key, new WeakReference<String>(key));
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Returns the number of keys currently held in the pool.
+     */
+    public int size() {
+        int result = 0;
+        for (WeakHashMap<String, WeakReference<String>> segment : segments) {
+            synchronized (segment) {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Deep copies or visits a JSON structure, distributing the work among the threads of an
+ * executor service. The upper levels of the structure are decomposed by the calling thread
+ * until there are enough subtrees to occupy the available processors; large containers are
+ * split into ranges of sibling members. The subtrees and ranges are then processed
+ * sequentially by tasks, which never wait on each other, so any executor service can be used
+ * without risk of starvation. The results of the tasks are assembled by the calling thread,
+ * in member order, so a copy is identical to one produced by {@link JsonValue#copy()}.
+ */
+final class ParallelTraversal {
+
+    /** The minimum number of members in each range of a split container. */
+    private static final int MIN_RANGE = 16;
+
+    /** The depth beyond which the structure is no longer decomposed. */
+    private static final int MAX_DEPTH = 16;
+
+    /** The executor service to submit tasks to. */
+    private final ExecutorService executor;
+
+    /** The visitor to apply to values, or {@code null} if copying. */
+    private final JsonVisitor visitor;
+
+    /** The number of tasks to decompose the structure into. */
+    private final int parallelism;
+
+    /** The tasks submitted to the executor service, in order of submission. */
+    private final ArrayList<Task> tasks = new ArrayList<Task>();
+
+    /** The futures of the submitted tasks, in order of submission. */
+    private final ArrayList<Future<Object[]>> futures = new ArrayList<Future<Object[]>>();
+
+    /** The copy of the root value. */
+    private Object root;
+
+    /**
+     * Constructs a parallel traversal.
+     *
+     * @param executor the executor service to submit tasks to.
+     * @param visitor the visitor to apply to values, or {@code null} to copy values.
+     */
+    ParallelTraversal(ExecutorService executor, JsonVisitor visitor) {
+        this.executor = executor;
+        this.visitor = visitor;
+        this.parallelism = Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    /**
+     * Copies or visits the specified value.
+     *
+     * @param value the value to copy or visit.
+     * @return the copied object, or {@code null} if visiting.
+     * @throws JsonException if a transformer or visitor failed, or the thread was interrupted.
+     */
+    Object run(JsonValue value) throws JsonException {
+        try {
+            decompose(value);
+            for (int n = 0; n < tasks.size(); n++) {
+                tasks.get(n).assemble(futures.get(n).get());
+            }
+            return root;
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new JsonException(cause);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new JsonException(ie);
+        } finally {
+            for (Future<Object[]> future : futures) {
+                future.cancel(true); // no effect on completed tasks
+            }
+        }
+    }
+
+    /**
+     * Decomposes the structure breadth-first, submitting tasks for its subtrees and ranges.
+     */
+    private void decompose(JsonValue value) {
+        LinkedList<Node> queue = new LinkedList<Node>();
+        queue.add(new Node(value, new Slot(null, null, 0), 0));
+        while (!queue.isEmpty()) {
+            Node node = queue.removeFirst();
+            value = node.value;
+            if (!value.isMap() && !value.isList()) {
+                if (visitor != null) {
+                    visitor.visit(value);
+                } else {
+                    node.slot.set(value.getObject());
+                }
+                continue;
+            }
+            int size = value.size();
+            boolean split = (size >= MIN_RANGE * 2);
+            if (!split && (node.depth >= MAX_DEPTH || tasks.size() + queue.size() >= parallelism)) {
+                submit(new SubtreeTask(value, node.slot));
+                continue;
+            }
+            if (visitor != null && !visitor.visit(value)) {
+                continue;
+            }
+            Object target = null;
+            if (visitor == null) {
+                target = value.emptyCopy();
+                node.slot.set(target);
+            }
+            if (split) {
+                split(value.splitIterator(), Math.min(parallelism, size / MIN_RANGE), target);
+            } else {
+                boolean map = value.isMap();
+                int n = 0;
+                for (JsonValue member : value) {
+                    String key = (map ? KeyDictionary.pooled(member.getPointer().leaf()) : null);
+                    Slot slot = new Slot(target, key, n++);
+                    slot.set(null); // reserve position, maintaining member order
+                    queue.add(new Node(member, slot, node.depth + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the specified range into the specified number of pieces, submitting a task for
+     * each piece, in member order.
+     */
+    private void split(JsonSplitIterator range, int pieces, Object target) {
+        if (pieces > 1 && range.size() >= MIN_RANGE * 2) {
+            split(range.trySplit(), pieces / 2, target); // recursion
+            split(range, pieces - pieces / 2, target); // recursion
+        } else {
+            submit(new RangeTask(range, target));
+        }
+    }
+
+    /**
+     * Submits the specified task to the executor service.
+     */
+    private void submit(Task task) {
+        futures.add(executor.submit(task));
+        tasks.add(task);
+    }
+
+    /**
+     * A value awaiting decomposition.
+     */
+    private static final class Node {
+
+        final JsonValue value;
+
+        final Slot slot;
+
+        final int depth;
+
+        Node(JsonValue value, Slot slot, int depth) {
+            this.value = value;
+            this.slot = slot;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The position within a copied container that is to receive a copied member.
+     */
+    private final class Slot {
+
+        /** The copied container, or {@code null} for the root value. */
+        final Object container;
+
+        final String key;
+
+        final int index;
+
+        Slot(Object container, String key, int index) {
+            this.container = container;
+            this.key = key;
+            this.index = index;
+        }
+
+        @SuppressWarnings("unchecked")
+        void set(Object object) {
+            if (visitor != null) {
+                return;
+            } else if (container == null) {
+                root = object;
+            } else if (key != null) {
+                ((Map)container).put(key, object);
+            } else {
+                List<Object> list = (List)container;
+                if (index == list.size()) {
+                    list.add(object);
+                } else {
+                    list.set(index, object);
+                }
+            }
+        }
+    }
+
+    /**
+     * A unit of work, performed by a thread of the executor service.
+     */
+    private abstract static class Task implements Callable<Object[]> {
+
+        /**
+         * Assembles the result of the task into the copy. Called by the calling thread.
+         */
+        abstract void assemble(Object[] result);
+    }
+
+    /**
+     * Copies or visits an entire subtree.
+     */
+    private final class SubtreeTask extends Task {
+
+        final JsonValue value;
+
+        final Slot slot;
+
+        SubtreeTask(JsonValue value, Slot slot) {
+            this.value = value;
+            this.slot = slot;
+        }
+
+        @Override
+        public Object[] call() {
+            if (visitor != null) {
+                value.visit(visitor);
+                return null;
+            }
+            return new Object[] { value.copy().getObject() };
+        }
+
+        @Override
+        void assemble(Object[] result) {
+            if (result != null) {
+                slot.set(result[0]);
+            }
+        }
+    }
+
+    /**
+     * Copies or visits a range of sibling members.
+     */
+    private final class RangeTask extends Task {
+
+        final JsonSplitIterator range;
+
+        /** The copy of the parent, or {@code null} if visiting. */
+        final Object target;
+
+        RangeTask(JsonSplitIterator range, Object target) {
+            this.range = range;
+            this.target = target;
+        }
+
+        /**
+         * Returns the keys and copies of the members, alternating, or {@code null} if
+         * visiting.
+         */
+        @Override
+        public Object[] call() {
+            Object[] result = (visitor == null ? new Object[range.size() * 2] : null);
+            for (int n = 0; range.hasNext(); n += 2) {
+                JsonValue member = range.next();
+                if (visitor != null) {
+                    member.visit(visitor);
+                } else {
+                    result[n] = KeyDictionary.pooled(member.getPointer().leaf());
+                    result[n + 1] = member.copy().getObject();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void assemble(Object[] result) {
+            if (result == null) {
+                return;
+            }
+            for (int n = 0; n < result.length; n += 2) {
+                if (target instanceof Map) {
+                    ((Map)target).put(result[n], result[n + 1]);
+                } else {
+                    ((List)target).add(result[n + 1]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list of JSON array elements, implemented as a radix-balanced trie of
+ * 32-element nodes with a separate tail node. Rather than being modified, the list produces
+ * new versions of itself with the {@link #plus}, {@link #with} and {@link #minus} methods.
+ * New versions share all unaffected nodes with the original, so appending, replacing or
+ * removing the last element costs {@code O(log n)} in time and space.
+ * <p>
+ * Inserting or removing elements other than at the end of the list requires subsequent
+ * elements to be shifted, and so rebuilds the list in {@code O(n)}.
+ * <p>
+ * Calling any of the {@code List} modification methods will throw
+ * {@link UnsupportedOperationException}.
+ *
+ * @see PersistentMap
+ */
+public final class PersistentList extends AbstractList<Object> implements RandomAccess {
+
+    /** The number of bits of the index consumed by each level of the trie. */
+    private static final int BITS = 5;
+
+    /** The number of elements held by each node. */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Masks the index of an element within a node. */
+    private static final int MASK = WIDTH - 1;
+
+    /** An empty persistent list. */
+    public static final PersistentList EMPTY = new PersistentList(0, BITS, new Object[0], new Object[0]);
+
+    /** The number of elements in the list. */
+    private final int size;
+
+    /** The cached hash code, or {@code 0} if not yet computed. */
+    private int hash;
+
+    /** Whether the hash code cannot be cached, because a member may be modified. */
+    private boolean mutable;
+
+    /** The shift of the root node. */
+    private final int shift;
+
+    /** The root node, holding all elements prior to the tail. */
+    private final Object[] root;
+
+    /** The last (up to {@value #WIDTH}) elements of the list. */
+    private final Object[] tail;
+
+    /**
+     * Constructs a persistent list with the specified structure.
+     */
+    private PersistentList(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Returns a persistent list containing the elements of the specified collection, in the
+     * order they are returned by its iterator. If the specified collection is already a
+     * persistent list, then it is returned.
+     *
+     * @param collection the collection whose elements are to be placed in the list.
+     * @return the persistent list.
+     */
+    public static PersistentList copyOf(Collection<? extends Object> collection) {
+        if (collection instanceof PersistentList) {
+            return (PersistentList)collection;
+        }
+        PersistentList result = EMPTY;
+        for (Object element : collection) {
+            result = result.plus(element);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first element held in the tail.
+     */
+    private int tailOffset() {
+        return (size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS);
+    }
+
+    /**
+     * Returns the node holding the element at the specified index.
+     */
+    private Object[] nodeFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[])node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * Throws {@code IndexOutOfBoundsException} if the index is not within the specified bound.
+     */
+    private static void check(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + bound);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the hash code of this list. If all of the elements of the list are frozen, the
+     * hash code is computed once and cached, so that the hash code of a new version of the
+     * list, whose unaffected elements have cached hash codes, is computed cheaply.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 1;
+            boolean frozen = true;
+            for (int n = 0; n < size; n++) {
+                Object element = get(n);
+                h = 31 * h + (element == null ? 0 : element.hashCode());
+                frozen &= StructuralEquality.isFrozen(element);
+            }
+            if (frozen) {
+                hash = h;
+            } else {
+                mutable = true;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns {@code true} if the hash code of this list is cached, computing it if
+     * necessary.
+     */
+    boolean isHashCached() {
+        if (hash == 0 && !mutable) {
+            hashCode();
+        }
+        return (hash != 0);
+    }
+
+    @Override
+    public Object get(int index) {
+        check(index, size);
+        return nodeFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns a list containing the elements of this list, with the specified element
+     * appended to the end.
+     *
+     * @param element the element to append.
+     * @return the resulting list.
+     */
+    public PersistentList plus(Object element) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] t = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, t, 0, tail.length);
+            t[tail.length] = element;
+            return new PersistentList(size + 1, shift, root, t);
+        }
+        Object[] r;
+        int s = shift;
+        if ((size >>> BITS) > (1 << shift)) { // root overflow
+            r = new Object[] { root, path(shift, tail) };
+            s += BITS;
+        } else {
+            r = pushTail(shift, root, tail);
+        }
+        return new PersistentList(size + 1, s, r, new Object[] { element });
+    }
+
+    /**
+     * Returns a copy of the specified parent node, with the full tail pushed into the
+     * rightmost position at the specified level.
+     */
+    private Object[] pushTail(int level, Object[] parent, Object[] tail) {
+        int i = ((size - 1) >>> level) & MASK;
+        Object[] result = new Object[i + 1];
+        System.arraycopy(parent, 0, result, 0, Math.min(parent.length, i + 1));
+        if (level == BITS) {
+            result[i] = tail;
+        } else {
+            Object[] child = (i < parent.length ? (Object[])parent[i] : null);
+            result[i] = (child != null ? pushTail(level - BITS, child, tail) : path(level - BITS, tail));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a chain of single-child nodes from the specified level down to the node.
+     */
+    private static Object[] path(int level, Object[] node) {
+        return (level == 0 ? node : new Object[] { path(level - BITS, node) });
+    }
+
+    /**
+     * Returns a list containing the elements of this list, with the element at the specified
+     * index replaced with the specified element. If the index is equal to the size of the
+     * list, the element is appended.
+     *
+     * @param index the index of the element to replace.
+     * @param element the element to be stored at the specified index.
+     * @return the resulting list.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public PersistentList with(int index, Object element) {
+        if (index == size) {
+            return plus(element);
+        }
+        check(index, size);
+        if (index >= tailOffset()) {
+            Object[] t = tail.clone();
+            t[index & MASK] = element;
+            return new PersistentList(size, shift, root, t);
+        }
+        return new PersistentList(size, shift, with(shift, root, index, element), tail);
+    }
+
+    /**
+     * Returns a copy of the specified node, with the element at the specified index replaced.
+     */
+    private static Object[] with(int level, Object[] node, int index, Object element) {
+        Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = element;
+        } else {
+            int i = (index >>> level) & MASK;
+            result[i] = with(level - BITS, (Object[])node[i], index, element);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list containing the elements of this list, with the specified element
+     * inserted at the specified index. Subsequent elements are shifted to the right.
+     *
+     * @param index the index at which the element is to be inserted.
+     * @param element the element to be inserted.
+     * @return the resulting list.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public PersistentList plus(int index, Object element) {
+        if (index == size) {
+            return plus(element);
+        }
+        check(index, size);
+        PersistentList result = prefix(index).plus(element);
+        for (int n = index; n < size; n++) {
+            result = result.plus(get(n));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list containing the elements of this list, without the element at the
+     * specified index. Subsequent elements are shifted to the left.
+     *
+     * @param index the index of the element to remove.
+     * @return the resulting list.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public PersistentList minus(int index) {
+        check(index, size);
+        if (index == size - 1) {
+            return pop();
+        }
+        PersistentList result = prefix(index);
+        for (int n = index + 1; n < size; n++) {
+            result = result.plus(get(n));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list containing the first {@code length} elements of this list.
+     */
+    private PersistentList prefix(int length) {
+        PersistentList result = this;
+        while (result.size > length) {
+            result = result.pop();
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list containing the elements of this list, without the last element.
+     */
+    private PersistentList pop() {
+        if (size == 1) {
+            return EMPTY;
+        } else if (size - tailOffset() > 1) {
+            Object[] t = new Object[tail.length - 1];
+            System.arraycopy(tail, 0, t, 0, t.length);
+            return new PersistentList(size - 1, shift, root, t);
+        }
+        Object[] t = nodeFor(size - 2);
+        Object[] r = popTail(shift, root);
+        int s = shift;
+        if (r == null) {
+            r = new Object[0];
+        }
+        if (shift > BITS && r.length == 1) { // collapse root
+            r = (Object[])r[0];
+            s -= BITS;
+        }
+        return new PersistentList(size - 1, s, r, t);
+    }
+
+    /**
+     * Returns a copy of the specified node, without its rightmost leaf node; or {@code null}
+     * if the node becomes empty.
+     */
+    private Object[] popTail(int level, Object[] node) {
+        int i = ((size - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Object[] child = popTail(level - BITS, (Object[])node[i]);
+            if (child == null && i == 0) {
+                return null;
+            }
+            Object[] result = new Object[child == null ? i : i + 1];
+            System.arraycopy(node, 0, result, 0, i);
+            if (child != null) {
+                result[i] = child;
+            }
+            return result;
+        } else if (i == 0) {
+            return null;
+        }
+        Object[] result = new Object[i];
+        System.arraycopy(node, 0, result, 0, i);
+        return result;
+    }
+}
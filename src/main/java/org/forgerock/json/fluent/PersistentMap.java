@@ -0,0 +1,457 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map of JSON object members, implemented as a hash array mapped trie. Rather
+ * than being modified, the map produces new versions of itself with the {@link #plus} and
+ * {@link #minus} methods. New versions share all unaffected nodes with the original, so a
+ * single member update costs {@code O(log n)} in time and space.
+ * <p>
+ * The iteration order of the map is undefined. Calling any of the {@code Map} modification
+ * methods will throw {@link UnsupportedOperationException}.
+ *
+ * @see PersistentList
+ */
+public final class PersistentMap extends AbstractMap<String, Object> {
+
+    /** An empty persistent map. */
+    public static final PersistentMap EMPTY = new PersistentMap(null, 0);
+
+    /** Returned by node lookups if the key is not found. */
+    private static final Object NOT_FOUND = new Object();
+
+    /** The root node of the trie, or {@code null} if the map is empty. */
+    private final Node root;
+
+    /** The number of members in the map. */
+    private final int size;
+
+    /** The cached hash code, or {@code 0} if not yet computed. */
+    private int hash;
+
+    /** Whether the hash code cannot be cached, because a member may be modified. */
+    private boolean mutable;
+
+    /**
+     * Constructs a persistent map with the specified root node and size.
+     */
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns a persistent map containing the members of the specified map. If the specified
+     * map is already a persistent map, then it is returned.
+     *
+     * @param map the map whose members are to be placed in the persistent map.
+     * @return the persistent map.
+     */
+    public static PersistentMap copyOf(Map<String, ? extends Object> map) {
+        if (map instanceof PersistentMap) {
+            return (PersistentMap)map;
+        }
+        PersistentMap result = EMPTY;
+        for (Map.Entry<String, ? extends Object> entry : map.entrySet()) {
+            result = result.plus(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hash of the specified key, with the higher bits spread downward.
+     */
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns a map containing the members of this map, with the specified key mapped to the
+     * specified value. If the key is already mapped to the (identical) value, this map is
+     * returned.
+     *
+     * @param key the key with which the value is to be associated.
+     * @param value the value to be associated with the key.
+     * @return the resulting map.
+     * @throws NullPointerException if {@code key} is {@code null}.
+     */
+    public PersistentMap plus(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        boolean[] added = new boolean[1];
+        Node node = (root != null ? root : BitmapNode.EMPTY).plus(key, hash(key), value, 0, added);
+        return (node == root ? this : new PersistentMap(node, added[0] ? size + 1 : size));
+    }
+
+    /**
+     * Returns a map containing the members of this map, without the specified key. If this
+     * map does not contain the key, this map is returned.
+     *
+     * @param key the key to be removed.
+     * @return the resulting map.
+     */
+    public PersistentMap minus(Object key) {
+        if (root == null || !(key instanceof String)) {
+            return this;
+        }
+        Node node = root.minus((String)key, hash((String)key), 0);
+        return (node == root ? this : new PersistentMap(node, size - 1));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the hash code of this map. If all of the members of the map are frozen, the
+     * hash code is computed once and cached, so that the hash code of a new version of the
+     * map, whose unaffected members have cached hash codes, is computed cheaply.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            boolean frozen = true;
+            for (Map.Entry<String, Object> entry : entrySet()) {
+                Object value = entry.getValue();
+                h += entry.getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+                frozen &= StructuralEquality.isFrozen(value);
+            }
+            if (frozen) {
+                hash = h;
+            } else {
+                mutable = true;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns {@code true} if the hash code of this map is cached, computing it if
+     * necessary.
+     */
+    boolean isHashCached() {
+        if (hash == 0 && !mutable) {
+            hashCode();
+        }
+        return (hash != 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (root != null && key instanceof String &&
+         root.get((String)key, hash((String)key), 0) != NOT_FOUND);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object result = null;
+        if (root != null && key instanceof String) {
+            result = root.get((String)key, hash((String)key), 0);
+            if (result == NOT_FOUND) {
+                result = null;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override public int size() {
+                return size;
+            }
+            @Override public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator(root);
+            }
+        };
+    }
+
+    /**
+     * A node of the trie. Both node types hold their members in an array of alternating keys
+     * and values; a {@code null} key indicates that the value is a child node.
+     */
+    private abstract static class Node {
+
+        /** Alternating keys and values, or {@code null} keys and child nodes. */
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        abstract Object get(String key, int hash, int shift);
+
+        abstract Node plus(String key, int hash, Object value, int shift, boolean[] added);
+
+        abstract Node minus(String key, int hash, int shift);
+    }
+
+    /**
+     * A node which dispatches on five bits of the key hash per level, storing only those
+     * slots that are occupied, as indicated by a bitmap.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 0x1f);
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object get(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                return ((Node)v).get(key, hash, shift + 5);
+            }
+            return (key.equals(k) ? v : NOT_FOUND);
+        }
+
+        @Override
+        Node plus(String key, int hash, Object value, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] a = new Object[array.length + 2];
+                System.arraycopy(array, 0, a, 0, i);
+                a[i] = key;
+                a[i + 1] = value;
+                System.arraycopy(array, i, a, i + 2, array.length - i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, a);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node node = ((Node)v).plus(key, hash, value, shift + 5, added);
+                return (node == v ? this : with(i + 1, node));
+            } else if (key.equals(k)) {
+                return (value == v ? this : with(i + 1, value));
+            }
+            added[0] = true;
+            Object[] a = array.clone();
+            a[i] = null;
+            a[i + 1] = pair(shift + 5, (String)k, v, key, hash, value);
+            return new BitmapNode(bitmap, a);
+        }
+
+        @Override
+        Node minus(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = 2 * index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node node = ((Node)v).minus(key, hash, shift + 5);
+                if (node == v) {
+                    return this;
+                } else if (node != null) {
+                    return with(i + 1, node);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, a.length - i);
+            return new BitmapNode(bitmap & ~bit, a);
+        }
+
+        private BitmapNode with(int i, Object o) {
+            Object[] a = array.clone();
+            a[i] = o;
+            return new BitmapNode(bitmap, a);
+        }
+
+        /**
+         * Returns a node containing two members whose hashes collide at the previous level.
+         */
+        private static Node pair(int shift, String k1, Object v1, String k2, int h2, Object v2) {
+            int h1 = hash(k1);
+            if (h1 == h2) {
+                return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.plus(k1, h1, v1, shift, added).plus(k2, h2, v2, shift, added);
+        }
+    }
+
+    /**
+     * A node containing members whose keys have identical hashes.
+     */
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        int find(String key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(String key, int hash, int shift) {
+            int i = find(key);
+            return (i >= 0 ? array[i + 1] : NOT_FOUND);
+        }
+
+        @Override
+        Node plus(String key, int hash, Object value, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                return new BitmapNode(BitmapNode.bit(this.hash, shift), new Object[] { null, this })
+                 .plus(key, hash, value, shift, added);
+            }
+            int i = find(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] a = array.clone();
+                a[i + 1] = value;
+                return new CollisionNode(hash, a);
+            }
+            Object[] a = new Object[array.length + 2];
+            System.arraycopy(array, 0, a, 0, array.length);
+            a[array.length] = key;
+            a[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, a);
+        }
+
+        @Override
+        Node minus(String key, int hash, int shift) {
+            int i = find(key);
+            if (i < 0) {
+                return this;
+            } else if (array.length == 2) {
+                return null;
+            }
+            Object[] a = new Object[array.length - 2];
+            System.arraycopy(array, 0, a, 0, i);
+            System.arraycopy(array, i + 2, a, i, a.length - i);
+            return new CollisionNode(hash, a);
+        }
+    }
+
+    /**
+     * Iterates over the members of the trie, depth-first.
+     */
+    private static final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        /** The arrays of the nodes being traversed. */
+        private final Object[][] arrays = new Object[8][];
+
+        /** The current position within each array. */
+        private final int[] positions = new int[8];
+
+        /** The depth of the node currently being traversed; {@code -1} if exhausted. */
+        private int depth = -1;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                arrays[++depth] = root.array;
+            }
+            advance();
+        }
+
+        /**
+         * Positions the iterator at the next member, descending into child nodes.
+         */
+        private void advance() {
+            while (depth >= 0) {
+                Object[] a = arrays[depth];
+                int i = positions[depth];
+                if (i >= a.length) {
+                    positions[depth--] = 0;
+                    if (depth >= 0) {
+                        positions[depth] += 2;
+                    }
+                } else if (a[i] == null) {
+                    arrays[++depth] = ((Node)a[i + 1]).array;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth >= 0;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (depth < 0) {
+                throw new NoSuchElementException();
+            }
+            Object[] a = arrays[depth];
+            int i = positions[depth];
+            positions[depth] += 2;
+            advance();
+            return new AbstractMap.SimpleImmutableEntry<String, Object>((String)a[i], a[i + 1]);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the values of a JSON structure by pointer, so that a value can be found with a
+ * single hash lookup rather than by traversing the structure. Values are indexed as they are
+ * resolved, or all at once. Each indexed value is linked to its indexed children, so that
+ * when a value is modified, the index entries for exactly its subtree can be discarded.
+ * <p>
+ * As values are indexed when they are resolved, even lookups modify the index; all access is
+ * therefore synchronized, so that a read-only structure can be read concurrently by multiple
+ * threads through its JSON value.
+ *
+ * @see JsonValue#enableIndex(boolean)
+ */
+final class PointerIndex {
+
+    /** Returned by {@link #get} if the pointer identifies no value. */
+    static final Object UNDEFINED = new Object();
+
+    /**
+     * Returned by {@link #get} if the pointer identifies a list element by a non-canonical
+     * index, such as {@code 01}; such values are not indexed, and must be found by traversal.
+     */
+    static final Object UNINDEXED = new Object();
+
+    /** The indexed values, keyed by pointer. */
+    private final HashMap<JsonPointer, Node> nodes = new HashMap<JsonPointer, Node>();
+
+    /** The root of the indexed structure. */
+    private Node root;
+
+    /** Resolved for pointers that contain a non-canonical list index. */
+    private final Node unindexed = new Node(null, null, UNINDEXED);
+
+    /**
+     * Constructs an index of the specified structure.
+     *
+     * @param object the root object of the structure.
+     */
+    PointerIndex(Object object) {
+        reset(object);
+    }
+
+    /**
+     * Discards all index entries, and starts indexing the specified structure.
+     *
+     * @param object the root object of the structure.
+     */
+    synchronized void reset(Object object) {
+        nodes.clear();
+        root = new Node(new JsonPointer(), null, object);
+        nodes.put(root.pointer, root);
+    }
+
+    /**
+     * Indexes every value in the structure.
+     */
+    synchronized void indexAll() {
+        indexAll(root);
+    }
+
+    private void indexAll(Node node) {
+        if (node.object instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)node.object).entrySet()) {
+                indexAll(node.child((String)entry.getKey(), entry.getValue())); // recursion
+            }
+        } else if (node.object instanceof List) {
+            List<?> list = (List<?>)node.object;
+            for (int n = 0; n < list.size(); n++) {
+                indexAll(node.child(Integer.toString(n), list.get(n))); // recursion
+            }
+        }
+    }
+
+    /**
+     * Returns the object identified by the specified pointer, {@link #UNDEFINED} if there is
+     * no such value, or {@link #UNINDEXED} if the pointer contains a non-canonical list index.
+     * The value and its ancestors are indexed.
+     *
+     * @param pointer the pointer identifying the value to return.
+     * @return the object, {@code UNDEFINED} or {@code UNINDEXED}.
+     */
+    synchronized Object get(JsonPointer pointer) {
+        Node node = resolve(pointer);
+        return (node != null ? node.object : UNDEFINED);
+    }
+
+    /**
+     * Returns the node of the specified pointer, indexing it if necessary, {@code null} if it
+     * identifies no value, or {@link #unindexed} if it contains a non-canonical list index.
+     */
+    private Node resolve(JsonPointer pointer) {
+        Node node = nodes.get(pointer);
+        if (node != null || pointer.size() == 0) {
+            return node;
+        }
+        Node parent = resolve(pointer.parent()); // recursion
+        if (parent == null || parent == unindexed) {
+            return parent;
+        }
+        String token = pointer.leaf();
+        if (parent.object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>)parent.object;
+            Object object = map.get(token);
+            if (object == null && !map.containsKey(token)) {
+                return null;
+            }
+            return parent.child(token, object);
+        } else if (parent.object instanceof List) {
+            List<?> list = (List<?>)parent.object;
+            int index;
+            try {
+                index = Integer.parseInt(token);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+            if (index < 0 || index >= list.size()) {
+                return null;
+            } else if (!token.equals(Integer.toString(index))) {
+                return unindexed; // not indexed, to simplify invalidation
+            }
+            return parent.child(token, list.get(index));
+        }
+        return null;
+    }
+
+    /**
+     * Discards the index entries for the value identified by the specified pointer, and for
+     * all of its descendants. List indexes in the pointer need not be canonical.
+     *
+     * @param pointer the pointer identifying the modified value.
+     */
+    synchronized void invalidate(JsonPointer pointer) {
+        if (pointer.size() == 0) {
+            reset(root.object);
+            return;
+        }
+        Node node = root;
+        for (String token : pointer) {
+            node = node.indexed(token);
+            if (node == null) {
+                return; // neither the value nor its descendants are indexed
+            }
+        }
+        node.parent.children.remove(node.pointer.leaf());
+        discard(node);
+    }
+
+    /**
+     * Discards the index entries for the member of the root value with the specified key,
+     * and for all of its descendants.
+     *
+     * @param key the key or list index of the modified member.
+     */
+    synchronized void invalidate(String key) {
+        Node node = root.indexed(key);
+        if (node != null) {
+            root.children.remove(node.pointer.leaf());
+            discard(node);
+        }
+    }
+
+    /**
+     * Discards the index entries for all of the descendants of the root value, such as when
+     * the elements of a root list have shifted.
+     */
+    synchronized void invalidateAll() {
+        reset(root.object);
+    }
+
+    /**
+     * Removes the specified node and its descendants from the index.
+     */
+    private void discard(Node node) {
+        nodes.remove(node.pointer);
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                discard(child); // recursion
+            }
+        }
+    }
+
+    /**
+     * An indexed value.
+     */
+    private final class Node {
+
+        final JsonPointer pointer;
+
+        final Node parent;
+
+        final Object object;
+
+        /** The indexed children of the value, keyed by reference token. */
+        HashMap<String, Node> children;
+
+        Node(JsonPointer pointer, Node parent, Object object) {
+            this.pointer = pointer;
+            this.parent = parent;
+            this.object = object;
+        }
+
+        /**
+         * Returns the indexed child with the specified token, or {@code null} if it is not
+         * indexed. A list index is looked up in its canonical form.
+         */
+        Node indexed(String token) {
+            if (children == null) {
+                return null;
+            }
+            Node result = children.get(token);
+            if (result == null && object instanceof List) {
+                try {
+                    result = children.get(Integer.toString(Integer.parseInt(token)));
+                } catch (NumberFormatException nfe) {
+                    // not a list index, so not indexed
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Indexes the child value with the specified token and object.
+         */
+        Node child(String token, Object object) {
+            Node result = new Node(pointer.child(token), this, object);
+            if (children == null) {
+                children = new HashMap<String, Node>();
+            }
+            children.put(token, result);
+            nodes.put(result.pointer, result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A list suited to holding very large JSON arrays. Elements are stored in fixed-size
+ * segments, each of which is a circular buffer; every segment but the last is full, so an
+ * element is located by index in constant time. Inserting or removing an element shifts
+ * elements within one segment, then moves a single element between each of the following
+ * segments, rather than shifting the entire tail of the list. Appending never copies
+ * existing elements.
+ * <p>
+ * This list is not thread-safe. It permits {@code null} elements.
+ */
+public final class SegmentedList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** The number of bits of an index that locate an element within its segment. */
+    private static final int SHIFT = 8;
+
+    /** The number of elements in each segment. */
+    private static final int CAPACITY = 1 << SHIFT;
+
+    /** Mask for the position of an element within its segment or circular buffer. */
+    private static final int MASK = CAPACITY - 1;
+
+    /** The segments of the list, all full except for the last. */
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+
+    /** The number of elements in the list. */
+    private int size;
+
+    /**
+     * Constructs an empty list.
+     */
+    public SegmentedList() {
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified collection, in the order
+     * they are returned by its iterator.
+     *
+     * @param c the collection whose elements are to be placed into the list.
+     */
+    public SegmentedList(Collection<? extends E> c) {
+        addAll(c);
+    }
+
+    /**
+     * Throws {@code IndexOutOfBoundsException} if the index does not identify an element.
+     */
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        check(index);
+        return (E)segments.get(index >>> SHIFT).get(index & MASK);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        check(index);
+        return (E)segments.get(index >>> SHIFT).set(index & MASK, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == segments.size() << SHIFT) { // all segments are full
+            segments.add(new Segment());
+        }
+        int n = index >>> SHIFT;
+        Segment segment = segments.get(n);
+        Object carry = (segment.size == CAPACITY ? segment.removeLast() : null);
+        segment.insert(index & MASK, element);
+        while (segment.size == CAPACITY && ++n < segments.size()) {
+            segment = segments.get(n);
+            Object next = (segment.size == CAPACITY ? segment.removeLast() : null);
+            segment.addFirst(carry);
+            carry = next;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        check(index);
+        int n = index >>> SHIFT;
+        Segment segment = segments.get(n);
+        Object result = segment.remove(index & MASK);
+        while (++n < segments.size()) {
+            Segment next = segments.get(n);
+            segment.addLast(next.removeFirst());
+            segment = next;
+        }
+        if (segment.size == 0) {
+            segments.remove(segments.size() - 1);
+        }
+        size--;
+        modCount++;
+        return (E)result;
+    }
+
+    @Override
+    public void clear() {
+        segments.clear();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * A segment of the list, stored in a circular buffer.
+     */
+    private static final class Segment {
+
+        /** The elements of the segment, starting at {@code head}. */
+        final Object[] items = new Object[CAPACITY];
+
+        /** The position of the first element within the buffer. */
+        int head;
+
+        /** The number of elements in the segment. */
+        int size;
+
+        Object get(int index) {
+            return items[(head + index) & MASK];
+        }
+
+        Object set(int index, Object element) {
+            int n = (head + index) & MASK;
+            Object result = items[n];
+            items[n] = element;
+            return result;
+        }
+
+        void addFirst(Object element) {
+            head = (head - 1) & MASK;
+            items[head] = element;
+            size++;
+        }
+
+        void addLast(Object element) {
+            items[(head + size) & MASK] = element;
+            size++;
+        }
+
+        Object removeFirst() {
+            Object result = items[head];
+            items[head] = null;
+            head = (head + 1) & MASK;
+            size--;
+            return result;
+        }
+
+        Object removeLast() {
+            int n = (head + --size) & MASK;
+            Object result = items[n];
+            items[n] = null;
+            return result;
+        }
+
+        /**
+         * Inserts an element into a segment that is not full, shifting whichever side of
+         * the insertion point is shorter.
+         */
+        void insert(int index, Object element) {
+            if (index < size / 2) {
+                head = (head - 1) & MASK;
+                for (int n = 0; n < index; n++) {
+                    items[(head + n) & MASK] = items[(head + n + 1) & MASK];
+                }
+            } else {
+                for (int n = size; n > index; n--) {
+                    items[(head + n) & MASK] = items[(head + n - 1) & MASK];
+                }
+            }
+            items[(head + index) & MASK] = element;
+            size++;
+        }
+
+        /**
+         * Removes an element from the segment, shifting whichever side of the removal point
+         * is shorter.
+         */
+        Object remove(int index) {
+            Object result = get(index);
+            if (index < size / 2) {
+                for (int n = index; n > 0; n--) {
+                    items[(head + n) & MASK] = items[(head + n - 1) & MASK];
+                }
+                items[head] = null;
+                head = (head + 1) & MASK;
+            } else {
+                for (int n = index; n < size - 1; n++) {
+                    items[(head + n) & MASK] = items[(head + n + 1) & MASK];
+                }
+                items[(head + size - 1) & MASK] = null;
+            }
+            size--;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the entries of a map that have string keys, skipping any others, without
+ * copying the entries. Used to expose only the members of a JSON object, which can only have
+ * string keys, from a {@code Map} that may hold other keys.
+ * <p>
+ * The {@link #remove()} method removes the last returned entry from the map, and must be
+ * called before {@link #hasNext()}, which may advance past other entries.
+ */
+class StringEntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+    /** The iterator over all entries of the map. */
+    private final Iterator<? extends Map.Entry<?, ?>> i;
+
+    /** The next entry to return, or {@code null} if not yet found. */
+    private Map.Entry<String, Object> next;
+
+    /** Indicates the last returned entry can be removed through {@link #i}. */
+    private boolean removable;
+
+    /**
+     * Constructs an iterator over the entries of the specified map that have string keys.
+     *
+     * @param map the map whose entries are to be iterated.
+     */
+    StringEntryIterator(Map<?, ?> map) {
+        i = map.entrySet().iterator();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (next == null && i.hasNext()) {
+            Map.Entry<?, ?> entry = i.next();
+            removable = false;
+            if (entry.getKey() instanceof String) {
+                next = (Map.Entry<String, Object>)entry;
+            }
+        }
+        return (next != null);
+    }
+
+    @Override
+    public Map.Entry<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map.Entry<String, Object> result = next;
+        next = null;
+        removable = true;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        if (!removable) {
+            throw new IllegalStateException();
+        }
+        i.remove();
+        removable = false;
+    }
+}
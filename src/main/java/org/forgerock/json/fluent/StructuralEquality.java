@@ -0,0 +1,137 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Deep equality of JSON structures. Identical subtrees are not descended into, and frozen
+ * subtrees, which cache their hash codes, are found to be unequal without being descended
+ * into if their hash codes differ. Comparing two versions of a persistent structure
+ * therefore only visits the parts that changed.
+ */
+final class StructuralEquality {
+
+    /**
+     * Static methods only.
+     */
+    private StructuralEquality() {
+    }
+
+    /**
+     * Returns {@code true} if the specified object and all of its members cannot be modified:
+     * it is not a {@code Map} or {@code List}, or is a persistent map or list whose members
+     * are all frozen, and so caches its hash code. A persistent structure that holds a
+     * mutable {@code Map} or {@code List} at any depth is not frozen.
+     */
+    static boolean isFrozen(Object object) {
+        return (!(object instanceof Map || object instanceof List) || hashed(object));
+    }
+
+    /**
+     * Returns {@code true} if the specified objects are deeply equal, with the same semantics
+     * as {@link Map#equals} and {@link List#equals}.
+     *
+     * @param o1 the first object to compare.
+     * @param o2 the second object to compare.
+     * @return {@code true} if the objects are equal.
+     */
+    @SuppressWarnings("unchecked")
+    static boolean equal(Object o1, Object o2) {
+        if (o1 == o2) {
+            return true;
+        } else if (o1 == null || o2 == null) {
+            return false;
+        } else if (hashed(o1) && hashed(o2) && o1.hashCode() != o2.hashCode()) {
+            return false;
+        } else if (o1 instanceof Map && o2 instanceof Map) {
+            return equal((Map<Object, Object>)o1, (Map<Object, Object>)o2);
+        } else if (o1 instanceof List && o2 instanceof List) {
+            return equal((List<Object>)o1, (List<Object>)o2);
+        }
+        return o1.equals(o2);
+    }
+
+    /**
+     * Returns {@code true} if the specified objects can cheaply be found equal: they are
+     * identical, or are frozen structures with equal hash codes that are confirmed to be
+     * equal. Confirmation only descends into members that are neither identical nor
+     * distinguished by their hash codes. Distinct mutable structures are never found equal.
+     *
+     * @param o1 the first object to compare.
+     * @param o2 the second object to compare.
+     * @return {@code true} if the objects are known to be equal.
+     */
+    static boolean isUnchanged(Object o1, Object o2) {
+        return (o1 == o2 || (hashed(o1) && hashed(o2) && o1.hashCode() == o2.hashCode() &&
+         equal(o1, o2)));
+    }
+
+    /**
+     * Returns {@code true} if the object is a frozen structure, which caches its hash code.
+     */
+    private static boolean hashed(Object object) {
+        if (object instanceof PersistentMap) {
+            return ((PersistentMap)object).isHashCached();
+        } else if (object instanceof PersistentList) {
+            return ((PersistentList)object).isHashCached();
+        }
+        return false;
+    }
+
+    private static boolean equal(Map<Object, Object> m1, Map<Object, Object> m2) {
+        if (m1.size() != m2.size()) {
+            return false;
+        }
+        for (Map.Entry<Object, Object> entry : m1.entrySet()) {
+            Object value = m2.get(entry.getKey());
+            if (value == null && !m2.containsKey(entry.getKey())) {
+                return false;
+            } else if (!equal(entry.getValue(), value)) { // recursion
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equal(List<Object> l1, List<Object> l2) {
+        int size = l1.size();
+        if (size != l2.size()) {
+            return false;
+        }
+        if (l1 instanceof RandomAccess && l2 instanceof RandomAccess) {
+            for (int n = 0; n < size; n++) {
+                if (!equal(l1.get(n), l2.get(n))) { // recursion
+                    return false;
+                }
+            }
+        } else {
+            Iterator<Object> i1 = l1.iterator();
+            Iterator<Object> i2 = l2.iterator();
+            while (i1.hasNext()) {
+                if (!equal(i1.next(), i2.next())) { // recursion
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A view of a list whose elements have been verified to be {@code null} or of a given type.
+ * The elements are verified once, before the view is constructed; thereafter, elements
+ * written through the view are checked as they are written, so reads never need to be
+ * checked. Elements written to the backing list directly, rather than through the view, are
+ * not checked.
+ *
+ * @see JsonValue#asList(Class)
+ */
+final class TypedList<E> extends AbstractList<E> implements RandomAccess {
+
+    /** The list backing this view. */
+    final List<Object> backing;
+
+    /** The type of the elements of the list. */
+    final Class<E> type;
+
+    /**
+     * Constructs a view of the specified list. The caller must already have verified that
+     * all of the elements of the list are of the specified type.
+     *
+     * @param backing the list to provide a view of.
+     * @param type the type of the elements of the list.
+     */
+    TypedList(List<Object> backing, Class<E> type) {
+        this.backing = backing;
+        this.type = type;
+    }
+
+    /**
+     * Throws {@code ClassCastException} if the specified element is not {@code null} and not
+     * of the type of the elements of this list.
+     */
+    private E check(Object element) {
+        if (element != null && !type.isInstance(element)) {
+            throw new ClassCastException("Expecting a " + type.getName() + " element");
+        }
+        return type.cast(element);
+    }
+
+    @Override
+    public int size() {
+        return backing.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E)backing.get(index);
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the specified element.
+     *
+     * @throws ClassCastException if the element is not of the type of this list.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        return (E)backing.set(index, check(element));
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this list.
+     *
+     * @throws ClassCastException if the element is not of the type of this list.
+     */
+    @Override
+    public void add(int index, E element) {
+        backing.add(index, check(element));
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        E result = (E)backing.remove(index);
+        modCount++;
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        backing.clear();
+        modCount++;
+    }
+}
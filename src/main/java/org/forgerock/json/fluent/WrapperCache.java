@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.HashMap;
+
+/**
+ * Caches the {@link JsonValueMap} and {@link JsonValueList} wrappers of the members of a
+ * wrapped container, so that reading the same member repeatedly yields the same wrapper. A
+ * cached wrapper is only returned while the member's backing object is identical to the one
+ * it was created for; a member that is replaced, even by bypassing the wrapper, is wrapped
+ * anew.
+ * <p>
+ * As reads populate the cache, it is synchronized, so that wrappers can still be read
+ * concurrently by multiple threads. The lock is not held while a member is being wrapped,
+ * so concurrent readers of an uncached member may each wrap it; one of the wrappers is
+ * retained.
+ */
+class WrapperCache {
+
+    /** The cached wrappers, keyed by member key or list index. */
+    private HashMap<Object, Entry> entries;
+
+    /**
+     * Returns the wrapper for the specified member, computing it from the JSON value if it
+     * is not cached. Only {@link JsonValueWrapper} results are cached.
+     *
+     * @param value the JSON value that contains the member.
+     * @param key the key of the member, or its list index as a string.
+     * @param id the identifier of the member in the cache.
+     * @param object the backing object of the member.
+     * @return the wrapped member.
+     */
+    Object get(JsonValue value, String key, Object id, Object object) {
+        synchronized (this) {
+            if (entries != null) {
+                Entry entry = entries.get(id);
+                if (entry != null && entry.object == object) {
+                    return entry.wrapper;
+                }
+            }
+        }
+        Object result = value.member(key, object, true);
+        if (result instanceof JsonValueWrapper) {
+            synchronized (this) {
+                if (entries == null) {
+                    entries = new HashMap<Object, Entry>();
+                }
+                entries.put(id, new Entry(object, result));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the cached wrapper of the specified member, if any.
+     */
+    synchronized void remove(Object id) {
+        if (entries != null) {
+            entries.remove(id);
+        }
+    }
+
+    /**
+     * Removes all cached wrappers.
+     */
+    synchronized void clear() {
+        entries = null;
+    }
+
+    /**
+     * A cached wrapper, and the backing object it was created for.
+     */
+    private static final class Entry {
+
+        final Object object;
+
+        final Object wrapper;
+
+        Entry(Object object, Object wrapper) {
+            this.object = object;
+            this.wrapper = wrapper;
+        }
+    }
+}
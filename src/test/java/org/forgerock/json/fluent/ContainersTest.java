@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// FEST-Assert
+import static org.fest.assertions.Assertions.assertThat;
+
+// TestNG
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for the container implementations used to hold JSON values.
+ */
+public class ContainersTest {
+
+    // ----- compact map tests ----------
+
+    @Test
+    public void compactMapMatchesLinkedHashMap() {
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        CompactMap map = new CompactMap();
+        for (int n = 0; n < CompactMap.THRESHOLD; n++) {
+            map.put("k" + n, n);
+            expected.put("k" + n, n);
+        }
+        map.remove("k2");
+        expected.remove("k2");
+        map.put("k0", "x");
+        expected.put("k0", "x");
+        assertThat(map.keySet().toString()).isEqualTo(expected.keySet().toString());
+        assertThat((Object)map).isEqualTo(expected);
+        for (int n = 100; n < 120; n++) { // promotes
+            map.put("k" + n, n);
+            expected.put("k" + n, n);
+        }
+        assertThat(map.keySet().toString()).isEqualTo(expected.keySet().toString());
+        assertThat((Object)map).isEqualTo(expected);
+    }
+
+    @Test
+    public void compactMapIteratorRemovesAndSets() {
+        CompactMap map = new CompactMap();
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+        for (Iterator<Map.Entry<String, Object>> i = map.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, Object> entry = i.next();
+            if (entry.getKey().equals("b")) {
+                i.remove();
+            } else {
+                entry.setValue("x");
+            }
+        }
+        assertThat(map.toString()).isEqualTo("{a=x, c=x}");
+    }
+
+    @Test
+    public void smallMapCopiedIntoCompactMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("z", 1);
+        map.put("a", 2);
+        JsonValue value = new JsonValue(map);
+        assertThat(value.copy().getObject()).isInstanceOf(CompactMap.class);
+        assertThat(value.clone().keys().toString()).isEqualTo("[z, a]");
+    }
+
+    // ----- container factory tests ----------
+
+    @Test
+    public void copyUsesDefaultFactory() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", new ArrayList<Object>());
+        JsonValue value = new JsonValue(map);
+        ContainerFactory.setDefault(ContainerFactory.ORDERED);
+        try {
+            assertThat(value.copy().getObject()).isInstanceOf(LinkedHashMap.class);
+            assertThat(value.clone().getObject()).isInstanceOf(LinkedHashMap.class);
+            JsonValue copy = value.lazyCopy();
+            copy.put("b", "c");
+            assertThat(map.containsKey("b")).isFalse();
+        } finally {
+            ContainerFactory.setDefault(null);
+        }
+        assertThat(ContainerFactory.getDefault()).isSameAs(ContainerFactory.COMPACT);
+    }
+
+    // ----- segmented list tests ----------
+
+    @Test
+    public void segmentedListMatchesArrayList() {
+        Random random = new Random(42);
+        List<Object> expected = new ArrayList<Object>();
+        SegmentedList<Object> list = new SegmentedList<Object>();
+        for (int n = 0; n < 3000; n++) {
+            list.add(n);
+            expected.add(n);
+        }
+        for (int n = 0; n < 5000; n++) {
+            int index = random.nextInt(expected.size() + 1);
+            if (random.nextInt(3) == 0 && index < expected.size()) {
+                assertThat(list.remove(index)).isEqualTo(expected.remove(index));
+            } else {
+                list.add(index, "e" + n);
+                expected.add(index, "e" + n);
+            }
+        }
+        assertThat((Object)list).isEqualTo(expected);
+        while (!expected.isEmpty()) {
+            int index = random.nextInt(expected.size());
+            assertThat(list.remove(index)).isEqualTo(expected.remove(index));
+        }
+        assertThat(list.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void largeListCopiedIntoSegmentedList() {
+        List<Object> list = new ArrayList<Object>();
+        for (int n = 0; n < 5000; n++) {
+            list.add(n);
+        }
+        JsonValue copy = new JsonValue(list).copy();
+        assertThat(copy.getObject()).isInstanceOf(SegmentedList.class);
+        assertThat(copy.getObject()).isEqualTo(list);
+        copy.add(0, "a");
+        assertThat(copy.get(4999).asInteger()).isEqualTo(4998);
+    }
+}
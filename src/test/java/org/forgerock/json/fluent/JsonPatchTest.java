@@ -0,0 +1,227 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// FEST-Assert
+import static org.fest.assertions.Assertions.assertThat;
+
+// TestNG
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link JsonPatch}.
+ */
+public class JsonPatchTest {
+
+    /**
+     * Returns a map of the specified alternating keys and values.
+     */
+    private static Map<String, Object> map(Object... members) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int n = 0; n < members.length; n += 2) {
+            result.put((String)members[n], members[n + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list of the specified elements.
+     */
+    private static List<Object> list(Object... elements) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object element : elements) {
+            result.add(element);
+        }
+        return result;
+    }
+
+    // ----- diff tests ----------
+
+    @Test
+    public void diffOfEqualValuesIsEmpty() {
+        JsonValue value = new JsonValue(map("a", list(1, 2), "b", map("c", "d")));
+        assertThat(JsonPatch.diff(value, value.copy()).size()).isEqualTo(0);
+        assertThat(JsonPatch.diff(value, value).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void diffOfMembers() {
+        JsonValue original = new JsonValue(map("a", "b", "c", map("d", 1), "e", list(1, 2, 3)));
+        JsonValue target = new JsonValue(map("c", map("d", 2), "e", list(1, 4), "f", null));
+        assertThat(JsonPatch.diff(original, target).getObject()).isEqualTo(list(
+         map("op", "remove", "path", "/a"),
+         map("op", "replace", "path", "/c/d", "value", 2),
+         map("op", "replace", "path", "/e/1", "value", 4),
+         map("op", "remove", "path", "/e/2"),
+         map("op", "add", "path", "/f", "value", null)));
+    }
+
+    @Test
+    public void diffDetectsKeyedMoves() {
+        JsonValue original = new JsonValue(list(map("_id", "x", "v", 1), map("_id", "y"),
+         map("_id", "z")));
+        JsonValue target = new JsonValue(list(map("_id", "z"), map("_id", "w"),
+         map("_id", "x", "v", 2)));
+        assertThat(JsonPatch.diff(original, target).getObject()).isEqualTo(list(
+         map("op", "remove", "path", "/1"),
+         map("op", "move", "path", "/0", "from", "/1"),
+         map("op", "add", "path", "/1", "value", map("_id", "w")),
+         map("op", "replace", "path", "/2/v", "value", 2)));
+    }
+
+    @Test
+    public void diffSkipsSharedSubtrees() {
+        JsonValue v1 = new JsonValue(map("a", map("b", "c"), "d", list("e"))).persistentCopy();
+        JsonValue v2 = v1.with(new JsonPointer("/d/0"), "f");
+        assertThat(JsonPatch.diff(v1, v2).getObject()).isEqualTo(list(
+         map("op", "replace", "path", "/d/0", "value", "f")));
+    }
+
+    @Test
+    public void diffOfShuffledKeyedList() {
+        List<Object> original = list();
+        List<Object> target = list();
+        for (int n = 0; n < 200; n++) {
+            original.add(map("_id", n, "v", n));
+            if (n % 7 != 0) {
+                target.add(map("_id", (n * 37) % 200, "v", n % 3 == 0 ? -n : (n * 37) % 200));
+            } else {
+                target.add(map("_id", 1000 + n));
+            }
+        }
+        JsonValue value = new JsonValue(original).copy();
+        for (JsonValue op : JsonPatch.diff(value, new JsonValue(target))) {
+            String name = op.get("op").asString();
+            JsonPointer path = new JsonPointer(op.get("path").asString());
+            int index = Integer.parseInt(path.toArray()[0]);
+            if (name.equals("remove")) {
+                value.remove(index);
+            } else if (name.equals("move")) {
+                int from = Integer.parseInt(new JsonPointer(op.get("from").asString()).leaf());
+                Object element = value.get(from).getObject();
+                value.remove(from);
+                value.add(index, element);
+            } else if (path.size() == 1) {
+                value.add(index, op.get("value").getObject());
+            } else {
+                value.put(path, op.get("value").getObject());
+            }
+        }
+        assertThat(value.getObject()).isEqualTo(target);
+    }
+
+    // ----- apply tests ----------
+
+    @Test
+    public void applyDiffYieldsTarget() {
+        JsonValue original = new JsonValue(map("a", "b", "c", map("d", 1), "e", list(1, 2, 3),
+         "g", list(map("_id", "x", "v", 1), map("_id", "y"), map("_id", "z"))));
+        JsonValue target = new JsonValue(map("c", map("d", 2), "e", list(1, 4), "f", null,
+         "g", list(map("_id", "z"), map("_id", "w"), map("_id", "x", "v", 2))));
+        JsonValue patch = JsonPatch.diff(original, target);
+        JsonPatch.apply(original, patch);
+        assertThat(original.getObject()).isEqualTo(target.getObject());
+    }
+
+    @Test
+    public void applyCopyTestAndAppend() {
+        JsonValue value = new JsonValue(map("a", list("b"), "c", map("d", "e")));
+        JsonPatch.apply(value, new JsonValue(list(
+         map("op", "copy", "from", "/c", "path", "/f"),
+         map("op", "add", "path", "/a/-", "value", "g"),
+         map("op", "replace", "path", "/f/d", "value", "h"),
+         map("op", "test", "path", "/a", "value", list("b", "g")))));
+        assertThat(value.getObject()).isEqualTo(map("a", list("b", "g"), "c", map("d", "e"),
+         "f", map("d", "h")));
+    }
+
+    @Test
+    public void applyDiscardsIndexAndCache() {
+        JsonValue value = new JsonValue(map("a", list("b", "c"), "d", map("e", "f")));
+        value.enableIndex(true);
+        value.enableCache(8);
+        assertThat(value.get(new JsonPointer("/a/0")).asString()).isEqualTo("b");
+        assertThat(value.get(new JsonPointer("/d/e")).asString()).isEqualTo("f");
+        JsonPatch.apply(value, new JsonValue(list(
+         map("op", "remove", "path", "/a/0"),
+         map("op", "replace", "path", "/d", "value", map("e", "g")))));
+        assertThat(value.get(new JsonPointer("/a/0")).asString()).isEqualTo("c");
+        assertThat(value.get(new JsonPointer("/a/1"))).isNull();
+        assertThat(value.get(new JsonPointer("/d/e")).asString()).isEqualTo("g");
+        try {
+            JsonPatch.apply(value, new JsonValue(list(
+             map("op", "add", "path", "/a/0", "value", "x"),
+             map("op", "remove", "path", "/missing"))));
+            assertThat(false).isTrue();
+        } catch (JsonValueException jve) {
+            // expected
+        }
+        assertThat(value.get(new JsonPointer("/a/0")).asString()).isEqualTo("c");
+        assertThat(value.get(new JsonPointer("/a/1"))).isNull();
+    }
+
+    @Test
+    public void failedApplyIsUndone() {
+        JsonValue value = new JsonValue(map("a", list("b", "c"), "d", map("e", "f")));
+        Object expected = value.copy().getObject();
+        try {
+            JsonPatch.apply(value, new JsonValue(list(
+             map("op", "remove", "path", "/a/0"),
+             map("op", "add", "path", "/a/0", "value", "x"),
+             map("op", "move", "from", "/d/e", "path", "/a/1"),
+             map("op", "replace", "path", "/d", "value", 1),
+             map("op", "remove", "path", "/missing"))));
+            assertThat(false).isTrue();
+        } catch (JsonValueException jve) {
+            // expected
+        }
+        assertThat(value.getObject()).isEqualTo(expected);
+    }
+
+    @Test
+    public void applyRejectsInvalidLocations() {
+        JsonValue value = new JsonValue(map("a", list("b", "c")));
+        Object expected = value.copy().getObject();
+        Object[] patches = {
+            list(map("op", "remove", "path", "/a/0"),
+             map("op", "replace", "path", "/a/00", "value", "x")),
+            list(map("op", "remove", "path", "/a/0"),
+             map("op", "add", "path", "/a/+1", "value", "x")),
+            list(map("op", "remove", "path", "/a/0"),
+             map("op", "move", "from", "/x", "path", "/x")),
+            list(map("op", "remove", "path", "/a/0"),
+             map("op", "move", "from", "/a/01", "path", "/a/01")) };
+        for (Object patch : patches) {
+            try {
+                JsonPatch.apply(value, new JsonValue(patch));
+                assertThat(false).isTrue();
+            } catch (JsonValueException jve) {
+                // expected
+            }
+            assertThat(value.getObject()).isEqualTo(expected);
+        }
+        JsonPatch.apply(value, new JsonValue(list(
+         map("op", "move", "from", "/a/1", "path", "/a/1"))));
+        assertThat(value.getObject()).isEqualTo(expected);
+    }
+}
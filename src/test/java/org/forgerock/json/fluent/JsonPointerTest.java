@@ -18,6 +18,7 @@
 package org.forgerock.json.fluent;
 
 // Java SE
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -78,6 +79,103 @@ public class JsonPointerTest {
         assertThat(p1.toString()).isEqualTo("/a%2Fb/c");
     }
 
+    // ----- pointer set unit tests ----------
+
+    @Test
+    public void pointerSetMembership() {
+        JsonPointerSet set = new JsonPointerSet();
+        assertThat(set.add(new JsonPointer("/a/b"))).isTrue();
+        assertThat(set.add(new JsonPointer("/a/b"))).isFalse();
+        set.add(new JsonPointer("/a/c/d"));
+        assertThat(set.size()).isEqualTo(2);
+        assertThat(set.contains(new JsonPointer("/a"))).isFalse();
+        assertThat(set.contains(new JsonPointer("/a/c/d"))).isTrue();
+        assertThat(set.withPrefix(new JsonPointer("/a")).size()).isEqualTo(2);
+        assertThat(set.remove(new JsonPointer("/a/c/d"))).isTrue();
+        assertThat(set.matchesDescendantOf(new JsonPointer("/a/c"))).isFalse();
+        assertThat(set.size()).isEqualTo(1);
+        assertThat(set.iterator().next().toString()).isEqualTo("/a/b");
+    }
+
+    @Test
+    public void pointerSetMatchesWildcards() {
+        JsonPointerSet set = new JsonPointerSet();
+        set.add(new JsonPointer("/members/*/email"));
+        set.add(new JsonPointer("/members/0"));
+        assertThat(set.matches(new JsonPointer("/members/3/email"))).isTrue();
+        assertThat(set.matches(new JsonPointer("/members/3"))).isFalse();
+        assertThat(set.matchesAncestorOf(new JsonPointer("/members/0/name"))).isTrue();
+        assertThat(set.matchesAncestorOf(new JsonPointer("/members/1/name"))).isFalse();
+        assertThat(set.matchesDescendantOf(new JsonPointer("/members/1"))).isTrue();
+        JsonPointerSet.Cursor cursor = set.cursor().child("members").child("0");
+        assertThat(cursor.isMatched()).isTrue();
+        assertThat(cursor.hasDescendants()).isTrue();
+        assertThat(cursor.child("email").isCovered()).isTrue();
+        assertThat(set.cursor().child("other")).isNull();
+    }
+
+    // ----- extractor unit tests ----------
+
+    /**
+     * Returns the extracted values of the specified pointers from the specified JSON text.
+     */
+    private static Map<JsonPointer, JsonValue> extract(String json, String... pointers)
+    throws Exception {
+        List<JsonPointer> list = new ArrayList<JsonPointer>();
+        for (String pointer : pointers) {
+            list.add(new JsonPointer(pointer));
+        }
+        return new JsonPointerExtractor(list).extract(
+         new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void extractorSkipsUnrequestedValues() throws Exception {
+        Map<JsonPointer, JsonValue> result = extract("{ \"big\": [1, {\"x\": \"}]\\\"\"}], " +
+         "\"_id\": \"\\u00e9t\u00e9\", \"meta\": {\"rev\": 12, \"tags\": [true, null, " +
+         "-1.5e2, 12345678901]}}", "/_id", "/meta", "/meta/tags/3", "/missing");
+        assertThat(result.size()).isEqualTo(3);
+        assertThat(result.get(new JsonPointer("/_id")).asString()).isEqualTo("\u00e9t\u00e9");
+        assertThat(result.get(new JsonPointer("/meta")).get("rev").asInteger()).isEqualTo(12);
+        assertThat(result.get(new JsonPointer("/meta/tags/3")).getObject())
+         .isEqualTo(Long.valueOf(12345678901L));
+    }
+
+    @Test
+    public void extractorStopsWhenAllFound() throws Exception {
+        Map<JsonPointer, JsonValue> result = extract("{\"a\": {\"b\": 1}, \"c\": ] malformed",
+         "/a/b");
+        assertThat(result.get(new JsonPointer("/a/b")).asInteger()).isEqualTo(1);
+        result = extract("[{\"e\": 1}, {\"e\": 2}, {\"f\": 3}]", "/*/e");
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(result.get(new JsonPointer("/1/e")).asInteger()).isEqualTo(2);
+    }
+
+    @Test(expectedExceptions=JsonException.class)
+    public void extractorRejectsMalformedInput() throws Exception {
+        extract("{\"a\": [1, 2}", "/b");
+    }
+
+    @Test
+    public void extractorFollowsNumberGrammar() throws Exception {
+        Map<JsonPointer, JsonValue> result = extract("[0, -1, 2.5, 1e3, -0.5E-2, " +
+         "12345678901]", "/0", "/1", "/2", "/3", "/4", "/5");
+        assertThat(result.get(new JsonPointer("/0")).getObject()).isEqualTo(0);
+        assertThat(result.get(new JsonPointer("/1")).getObject()).isEqualTo(-1);
+        assertThat(result.get(new JsonPointer("/2")).getObject()).isEqualTo(2.5);
+        assertThat(result.get(new JsonPointer("/3")).getObject()).isEqualTo(1000.0);
+        assertThat(result.get(new JsonPointer("/4")).getObject()).isEqualTo(-0.005);
+        assertThat(result.get(new JsonPointer("/5")).getObject()).isEqualTo(12345678901L);
+        for (String literal : new String[] { "+1", "01", "-01", ".5", "1.", "1e", "--1" }) {
+            try {
+                extract("{\"a\": " + literal + "}", "/a");
+                assertThat(false).isTrue();
+            } catch (JsonException je) {
+                // expected
+            }
+        }
+    }
+
     // ----- exception unit tests ----------
 
     @Test(expectedExceptions=JsonException.class)
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// FEST-Assert
+import static org.fest.assertions.Assertions.assertThat;
+
+// TestNG
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link JsonProjection}.
+ */
+public class JsonProjectionTest {
+
+    /**
+     * Returns a map of the specified alternating keys and values.
+     */
+    private static Map<String, Object> map(Object... members) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int n = 0; n < members.length; n += 2) {
+            result.put((String)members[n], members[n + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list of the specified elements.
+     */
+    private static List<Object> list(Object... elements) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object element : elements) {
+            result.add(element);
+        }
+        return result;
+    }
+
+    private static List<JsonPointer> pointers(String... pointers) {
+        List<JsonPointer> result = new ArrayList<JsonPointer>();
+        for (String pointer : pointers) {
+            result.add(new JsonPointer(pointer));
+        }
+        return result;
+    }
+
+    @Test
+    public void includeRetainsPathsToIncludedValues() {
+        JsonValue value = new JsonValue(map("_id", "1", "name", map("first", "a", "last", "b"),
+         "members", list(map("email", "c", "phone", "d"), map("phone", "e")), "other", "f"));
+        JsonProjection projection = new JsonProjection(pointers("/_id", "/name/first",
+         "/members/*/email", "/missing/x"), Collections.<JsonPointer>emptyList());
+        assertThat(projection.apply(value).getObject()).isEqualTo(map("_id", "1",
+         "name", map("first", "a"), "members", list(map("email", "c"))));
+    }
+
+    @Test
+    public void excludeTakesPrecedence() {
+        JsonValue value = new JsonValue(map("a", map("b", "c", "password", "d"),
+         "e", list(map("password", "f", "g", "h"))));
+        JsonProjection projection = new JsonProjection(pointers("/a", "/e"),
+         pointers("/a/password", "/*/*/password"));
+        JsonValue result = projection.apply(value);
+        assertThat(result.getObject()).isEqualTo(map("a", map("b", "c"),
+         "e", list(map("g", "h"))));
+        assertThat(result.get("a").getObject()).isNotSameAs(value.get("a").getObject());
+        assertThat(new JsonProjection(Collections.<JsonPointer>emptyList(),
+         pointers("")).apply(value).isNull()).isTrue();
+    }
+
+    @Test
+    public void unmatchedRootIsOmitted() {
+        JsonProjection projection = new JsonProjection(pointers("/a"),
+         Collections.<JsonPointer>emptyList());
+        assertThat(projection.apply(new JsonValue("b")).isNull()).isTrue();
+        assertThat(projection.apply(new JsonValue(map("c", "d"))).isNull()).isTrue();
+        assertThat(projection.apply(new JsonValue(list("e"))).isNull()).isTrue();
+        assertThat(projection.apply(new JsonValue(map("a", "f", "c", "d"))).getObject())
+         .isEqualTo(map("a", "f"));
+        assertThat(new JsonProjection(pointers(""), Collections.<JsonPointer>emptyList())
+         .apply(new JsonValue("b")).getObject()).isEqualTo("b");
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// FEST-Assert
+import static org.fest.assertions.Assertions.assertThat;
+
+// TestNG
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link JsonQuery} and {@link JsonFilter}.
+ */
+public class JsonQueryTest {
+
+    /**
+     * Returns a map of the specified alternating keys and values.
+     */
+    private static Map<String, Object> map(Object... members) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int n = 0; n < members.length; n += 2) {
+            result.put((String)members[n], members[n + 1]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a list of the specified elements.
+     */
+    private static List<Object> list(Object... elements) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object element : elements) {
+            result.add(element);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pointers of the specified values, as strings.
+     */
+    private static List<String> pointers(List<JsonValue> values) {
+        List<String> result = new ArrayList<String>();
+        for (JsonValue value : values) {
+            result.add(value.getPointer().toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void wildcardsAndPredicates() {
+        JsonValue value = new JsonValue(map("members", list(
+         map("email", "a", "active", true, "age", 40),
+         map("email", "b", "active", false, "age", 50),
+         map("email", "c", "active", true, "age", 20),
+         map("active", true, "age", 31.5))));
+        List<JsonValue> result = new JsonQuery("/members/*[/active=true][/age>30]/email")
+         .select(value);
+        assertThat(pointers(result)).isEqualTo(list("/members/0/email"));
+        assertThat(result.get(0).asString()).isEqualTo("a");
+        assertThat(pointers(new JsonQuery("/members/*[/email][/age!=20]").select(value)))
+         .isEqualTo(list("/members/0", "/members/1"));
+        assertThat(pointers(new JsonQuery("/members/*[/email='b']").select(value)))
+         .isEqualTo(list("/members/1"));
+        assertThat(new JsonQuery("").select(value).get(0).getObject())
+         .isSameAs(value.getObject());
+    }
+
+    @Test
+    public void recursiveDescent() {
+        JsonValue value = new JsonValue(map("a", map("id", 1, "b", list(map("id", 2))),
+         "id", 3));
+        assertThat(pointers(new JsonQuery("/**/id").select(value)))
+         .isEqualTo(list("/id", "/a/id", "/a/b/0/id"));
+    }
+
+    @Test
+    public void parallelSelectPreservesOrder() throws Exception {
+        List<Object> members = new ArrayList<Object>();
+        for (int n = 0; n < 1000; n++) {
+            members.add(map("id", n, "even", n % 2 == 0));
+        }
+        JsonValue value = new JsonValue(map("members", members));
+        JsonQuery query = new JsonQuery("/members/*[/even=true]/id");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<JsonValue> result = query.select(value, executor);
+            assertThat(result.size()).isEqualTo(500);
+            assertThat(pointers(result)).isEqualTo(pointers(query.select(value)));
+            assertThat(result.get(499).asInteger()).isEqualTo(998);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void filterComparesFields() {
+        JsonValue users = new JsonValue(list(
+         map("active", true, "age", 40),
+         map("active", true, "age", 30L),
+         map("active", false, "age", 50),
+         map("active", true, "age", 30.5, "name", "d"),
+         map("active", true)));
+        JsonPointer age = new JsonPointer("/age");
+        JsonFilter filter = JsonFilter.and(JsonFilter.equalTo(new JsonPointer("/active"), true),
+         JsonFilter.greaterThan(age, 30), JsonFilter.lessThanOrEqualTo(age, 40.0));
+        assertThat(pointers(filter.filter(users))).isEqualTo(list("/0", "/3"));
+        assertThat(pointers(JsonFilter.or(JsonFilter.present(new JsonPointer("/name")),
+         JsonFilter.not(JsonFilter.present(age))).filter(users))).isEqualTo(list("/3", "/4"));
+        assertThat(pointers(JsonFilter.notEqualTo(age, 30).filter(users)))
+         .isEqualTo(list("/0", "/2", "/3"));
+        assertThat(JsonFilter.lessThan(age, "x").matches(users.get(0))).isFalse();
+    }
+
+    @Test
+    public void parallelFilterPreservesOrder() throws Exception {
+        List<Object> users = new ArrayList<Object>();
+        for (int n = 0; n < 10000; n++) {
+            users.add(map("age", n % 100));
+        }
+        JsonValue value = new JsonValue(users);
+        JsonFilter filter = JsonFilter.greaterThanOrEqualTo(new JsonPointer("/age"), 90);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<JsonValue> result = filter.filter(value, executor);
+            assertThat(result.size()).isEqualTo(1000);
+            assertThat(pointers(result)).isEqualTo(pointers(filter.filter(value)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions=JsonException.class)
+    public void malformedQuery() {
+        new JsonQuery("/members/*[/age>>30]");
+    }
+}
@@ -20,8 +20,16 @@ package org.forgerock.json.fluent;
 // Java SE
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // FEST-Assert
 import static org.fest.assertions.Assertions.assertThat;
@@ -142,4 +150,430 @@ public class JsonValueTest {
         mapValue.put(new JsonPointer("/keyE/keyJ/keyF/2"), "testValueH");
         assertThat(mapValue.get(new JsonPointer("/keyE/keyJ/keyF/2")).getObject()).isEqualTo("testValueH");
     }
+
+    @Test
+    public void typeFollowsSetObject() {
+        JsonValue value = new JsonValue("a");
+        assertThat(value.isString()).isTrue();
+        value.setObject(listValue);
+        assertThat(value.isString()).isFalse();
+        assertThat(value.isList()).isTrue();
+        value.add(0, "b");
+        assertThat(value.size()).isEqualTo(1);
+        value.setObject(null);
+        assertThat(value.isNull()).isTrue();
+        assertThat(value.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void typedListChecksWrites() {
+        listValue.put(0, "a");
+        listValue.put(1, null);
+        List<String> strings = listValue.asList(String.class);
+        strings.add("b");
+        assertThat(listValue.get(2).asString()).isEqualTo("b");
+        List raw = strings;
+        try {
+            raw.set(0, Integer.valueOf(1));
+            assertThat(false).isTrue();
+        } catch (ClassCastException cce) {
+            // expected
+        }
+        assertThat(new JsonValue(strings).asList(CharSequence.class).size()).isEqualTo(3);
+    }
+
+    @Test
+    public void typedListReverifiedAfterModification() {
+        listValue.put(0, "a");
+        listValue.asList(String.class);
+        listValue.asList().add(Integer.valueOf(1));
+        try {
+            listValue.asList(String.class);
+            assertThat(false).isTrue();
+        } catch (JsonValueException jve) {
+            // expected
+        }
+        mapValue.put("a", listValue.getObject());
+        listValue.asList().remove(1);
+        assertThat(mapValue.get("a").asList(String.class).get(0)).isEqualTo("a");
+        listValue.asList().add(Integer.valueOf(2));
+        try {
+            mapValue.get("a").asList(String.class);
+            assertThat(false).isTrue();
+        } catch (JsonValueException jve) {
+            // expected
+        }
+    }
+
+    @Test(expectedExceptions = JsonValueException.class)
+    public void typedListRejectsUnexpectedElements() {
+        listValue.put(0, "a");
+        listValue.put(1, Integer.valueOf(1));
+        listValue.asList(String.class);
+    }
+
+    @Test
+    public void mergeFollowsMergePatch() {
+        mapValue.put("a", "b");
+        mapValue.put("c", new HashMap<String, Object>());
+        mapValue.get("c").put("d", "e");
+        mapValue.get("c").put("f", "g");
+        mapValue.put("h", new ArrayList<Object>());
+        Map<String, Object> patch = new HashMap<String, Object>();
+        patch.put("a", "z");
+        patch.put("c", new HashMap<String, Object>());
+        ((Map)patch.get("c")).put("f", null);
+        patch.put("i", new HashMap<String, Object>());
+        ((Map)patch.get("i")).put("j", null);
+        ((Map)patch.get("i")).put("k", 1);
+        Object c = mapValue.get("c").getObject();
+        Object h = mapValue.get("h").getObject();
+        JsonValue merged = mapValue.merged(new JsonValue(patch));
+        assertThat(mapValue.get("a").asString()).isEqualTo("b");
+        assertThat(merged.get("a").asString()).isEqualTo("z");
+        assertThat(merged.get("c").isDefined("f")).isFalse();
+        assertThat(merged.get("i").keys().toString()).isEqualTo("[k]");
+        assertThat(merged.get("h").getObject()).isSameAs(h);
+        assertThat(mapValue.get("c").isDefined("f")).isTrue();
+        mapValue.merge(new JsonValue(patch));
+        assertThat(mapValue.getObject()).isEqualTo(merged.getObject());
+        assertThat(mapValue.get("c").getObject()).isSameAs(c);
+        assertThat(mapValue.merged(new JsonValue(patch)).getObject()).isSameAs(mapValue.getObject());
+    }
+
+    @Test
+    public void putAllCreatesIntermediates() {
+        Map<JsonPointer, Object> values = new HashMap<JsonPointer, Object>();
+        for (int n = 11; n >= 0; n--) {
+            values.put(new JsonPointer("/a/" + n + "/id"), n);
+        }
+        values.put(new JsonPointer("/b/c"), "d");
+        values.put(new JsonPointer("/b/e/0"), "f");
+        values.put(new JsonPointer("/g"), "h");
+        mapValue.put("g", "x");
+        mapValue.putAll(values);
+        assertThat(mapValue.get("a").size()).isEqualTo(12);
+        assertThat(mapValue.get(new JsonPointer("/a/10/id")).asInteger()).isEqualTo(10);
+        assertThat(mapValue.get(new JsonPointer("/b/c")).asString()).isEqualTo("d");
+        assertThat(mapValue.get(new JsonPointer("/b/e")).isList()).isTrue();
+        assertThat(mapValue.get(new JsonPointer("/b/e/0")).asString()).isEqualTo("f");
+        assertThat(mapValue.get("g").asString()).isEqualTo("h");
+    }
+
+    @Test
+    public void putAllSortsMixedKeys() {
+        Map<JsonPointer, Object> values = new HashMap<JsonPointer, Object>();
+        for (int n = 0; n < 40; n++) {
+            values.put(new JsonPointer("/m/" + n), n);
+            values.put(new JsonPointer("/m/" + n + "a"), n);
+            values.put(new JsonPointer("/m/0" + n), n);
+            values.put(new JsonPointer("/l/" + n + "/id"), n);
+        }
+        values.put(new JsonPointer("/m/b"), "c");
+        mapValue.put("m", new LinkedHashMap<String, Object>());
+        mapValue.putAll(values);
+        List<String> keys = new ArrayList<String>(mapValue.get("m").keys());
+        assertThat(keys.size()).isEqualTo(121);
+        for (int n = 0; n < 40; n++) {
+            assertThat(keys.get(n)).isEqualTo(Integer.toString(n));
+        }
+        for (int n = 41; n < keys.size(); n++) {
+            assertThat(keys.get(n - 1).compareTo(keys.get(n)) < 0).isTrue();
+        }
+        assertThat(mapValue.get(new JsonPointer("/m/10")).asInteger()).isEqualTo(10);
+        assertThat(mapValue.get(new JsonPointer("/m/1a")).asInteger()).isEqualTo(1);
+        assertThat(mapValue.get(new JsonPointer("/m/02")).asInteger()).isEqualTo(2);
+        assertThat(mapValue.get(new JsonPointer("/m/b")).asString()).isEqualTo("c");
+        assertThat(mapValue.get("l").size()).isEqualTo(40);
+        assertThat(mapValue.get(new JsonPointer("/l/39/id")).asInteger()).isEqualTo(39);
+    }
+
+    @Test(expectedExceptions = JsonValueException.class)
+    public void putAllRejectsSparseList() {
+        Map<JsonPointer, Object> values = new HashMap<JsonPointer, Object>();
+        values.put(new JsonPointer("/a/0"), "b");
+        values.put(new JsonPointer("/a/2"), "c");
+        mapValue.putAll(values);
+    }
+
+    @Test
+    public void indexFollowsModifications() {
+        mapValue.put("a", new HashMap<String, Object>());
+        mapValue.get("a").put("b", new ArrayList<Object>());
+        mapValue.get("a").get("b").put(0, "c");
+        mapValue.get("a").get("b").put(1, "d");
+        mapValue.enableIndex(true);
+        assertThat(mapValue.get(new JsonPointer("/a/b/1")).asString()).isEqualTo("d");
+        assertThat(mapValue.get(new JsonPointer("/a/b/1")).getPointer().toString())
+         .isEqualTo("/a/b/1");
+        assertThat(mapValue.get(new JsonPointer("/a/x"))).isNull();
+        mapValue.put(new JsonPointer("/a/b/01"), "e");
+        assertThat(mapValue.get(new JsonPointer("/a/b/1")).asString()).isEqualTo("e");
+        mapValue.put("a", "f");
+        assertThat(mapValue.get(new JsonPointer("/a/b"))).isNull();
+        assertThat(mapValue.get(new JsonPointer("/a")).asString()).isEqualTo("f");
+        mapValue.remove("a");
+        assertThat(mapValue.get(new JsonPointer("/a"))).isNull();
+        mapValue.put("g", "h");
+        assertThat(mapValue.get(new JsonPointer("/g")).asString()).isEqualTo("h");
+        for (Iterator<String> i = new JsonValueMap(mapValue).keySet().iterator(); i.hasNext();) {
+            i.next();
+            i.remove();
+        }
+        assertThat(mapValue.get(new JsonPointer("/g"))).isNull();
+    }
+
+    @Test
+    public void indexSupportsConcurrentLookups() throws Exception {
+        for (int n = 0; n < 100; n++) {
+            List<Object> list = new ArrayList<Object>();
+            for (int m = 0; m < 20; m++) {
+                list.add("v" + n + "." + m);
+            }
+            mapValue.put("k" + n, list);
+        }
+        mapValue.enableIndex(false);
+        final AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t * 25;
+                futures.add(executor.submit(new Runnable() {
+                    @Override public void run() {
+                        for (int i = 0; i < 2000; i++) {
+                            int n = (i + offset) % 100;
+                            int m = i % 20;
+                            JsonValue value = mapValue.get(new JsonPointer("/k" + n + "/" + m));
+                            if (value == null || !value.getObject().equals("v" + n + "." + m)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(errors.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void indexTraversesNonCanonicalIndexes() {
+        mapValue.put("a", new ArrayList<Object>());
+        mapValue.get("a").put(0, "b");
+        mapValue.get("a").put(1, "c");
+        for (boolean eager : new boolean[] { false, true }) {
+            mapValue.enableIndex(eager);
+            assertThat(mapValue.get(new JsonPointer("/a/01")).asString()).isEqualTo("c");
+            assertThat(mapValue.get(new JsonPointer("/a/01")).getPointer().toString())
+             .isEqualTo("/a/01");
+            assertThat(mapValue.get(new JsonPointer("/a/1")).asString()).isEqualTo("c");
+            assertThat(mapValue.get(new JsonPointer("/a/02"))).isNull();
+        }
+    }
+
+    @Test
+    public void cacheFollowsModifications() {
+        mapValue.put("a", new HashMap<String, Object>());
+        mapValue.get("a").put("b", "c");
+        JsonPointerCache cache = mapValue.enableCache(2);
+        JsonPointer p = new JsonPointer("/a/b");
+        assertThat(mapValue.get(p).asString()).isEqualTo("c");
+        assertThat(mapValue.get(p).asString()).isEqualTo("c");
+        assertThat(mapValue.get(new JsonPointer("/x"))).isNull();
+        assertThat(mapValue.get(new JsonPointer("/x"))).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(2L);
+        assertThat(cache.getMissCount()).isEqualTo(2L);
+        mapValue.get(new JsonPointer("/a"));
+        assertThat(cache.size()).isEqualTo(2);
+        mapValue.put("a", "d");
+        assertThat(mapValue.get(p)).isNull();
+        assertThat(mapValue.get(new JsonPointer("/a")).asString()).isEqualTo("d");
+        Iterator<String> i = new JsonValueMap(mapValue).keySet().iterator();
+        i.next();
+        i.remove();
+        assertThat(mapValue.get(new JsonPointer("/a"))).isNull();
+    }
+
+    // ----- copy tests ----------
+
+    @Test
+    public void lazyCopyIsolatesModifications() {
+        mapValue.put("a", new HashMap<String, Object>());
+        mapValue.get("a").put("b", new ArrayList<Object>());
+        mapValue.get("a").get("b").put(0, "c");
+        JsonValue copy = mapValue.lazyCopy();
+        copy.put(new JsonPointer("/a/b/0"), "x");
+        copy.get("a").get("b").add(1, "y");
+        copy.put("d", "e");
+        assertThat(copy.get(new JsonPointer("/a/b/0")).getObject()).isEqualTo("x");
+        assertThat(copy.get(new JsonPointer("/a/b/1")).getObject()).isEqualTo("y");
+        assertThat(mapValue.get(new JsonPointer("/a/b/0")).getObject()).isEqualTo("c");
+        assertThat(mapValue.get("a").get("b").size()).isEqualTo(1);
+        assertThat(mapValue.isDefined("d")).isFalse();
+    }
+
+    @Test
+    public void copyInternsKeys() {
+        mapValue.put(new String("key"), "a");
+        JsonValue other = new JsonValue(new HashMap<String, Object>());
+        other.put(new String("key"), "b");
+        KeyDictionary.setDefault(new KeyDictionary(100));
+        try {
+            String key = mapValue.copy().keys().iterator().next();
+            assertThat(other.copy().keys().iterator().next()).isSameAs(key);
+        } finally {
+            KeyDictionary.setDefault(null);
+        }
+    }
+
+    @Test
+    public void lazyCopyEqualsOriginal() {
+        mapValue.put("a", "b");
+        mapValue.put("c", new ArrayList<Object>());
+        mapValue.get("c").put(0, "d");
+        assertThat(mapValue.lazyCopy().getObject()).isEqualTo(mapValue.getObject());
+    }
+
+    @Test
+    public void lazyCopyGetWithNonStringKey() {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        List<Object> list = new ArrayList<Object>();
+        map.put(Integer.valueOf(1), list);
+        Map<?, ?> copy = (Map<?, ?>)new JsonValue(map).lazyCopy().getObject();
+        assertThat(copy.get(Integer.valueOf(1))).isSameAs(list);
+        assertThat(copy.get("1")).isNull();
+    }
+
+    @Test
+    public void parallelCopyEqualsCopy() throws Exception {
+        Map<String, Object> root = new LinkedHashMap<String, Object>();
+        for (int n = 0; n < 50; n++) {
+            List<Object> list = new ArrayList<Object>();
+            for (int m = 0; m < n * 10; m++) {
+                Map<String, Object> member = new LinkedHashMap<String, Object>();
+                member.put("z", m);
+                member.put("a", "v" + m);
+                list.add(member);
+            }
+            root.put("k" + (50 - n), list);
+        }
+        JsonValue value = new JsonValue(root);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            JsonValue copy = value.copy(executor);
+            assertThat(copy.getObject()).isEqualTo(value.copy().getObject());
+            assertThat(copy.keys().toString()).isEqualTo(value.keys().toString());
+            assertThat(copy.get(new JsonPointer("/k1/3")).keys().toString()).isEqualTo("[z, a]");
+            final AtomicInteger count = new AtomicInteger();
+            JsonVisitor visitor = new JsonVisitor() {
+                @Override public boolean visit(JsonValue value) {
+                    count.incrementAndGet();
+                    return true;
+                }
+            };
+            value.visit(visitor, executor);
+            int parallel = count.getAndSet(0);
+            value.visit(visitor);
+            assertThat(parallel).isEqualTo(count.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void splitIteratorCoversAllMembers() {
+        for (int n = 0; n < 100; n++) {
+            listValue.put(n, "e" + n);
+        }
+        JsonSplitIterator second = listValue.splitIterator();
+        JsonSplitIterator first = second.trySplit();
+        assertThat(first.size()).isEqualTo(50);
+        assertThat(second.size()).isEqualTo(50);
+        int index = 0;
+        for (JsonSplitIterator range : new JsonSplitIterator[] { first, second }) {
+            while (range.hasNext()) {
+                JsonValue element = range.next();
+                assertThat((Object)element.getPointer()).isEqualTo(new JsonPointer().child(index));
+                assertThat(element.asString()).isEqualTo("e" + index++);
+            }
+        }
+        assertThat(index).isEqualTo(100);
+    }
+
+    // ----- view tests ----------
+
+    @Test
+    public void mapViewsAreLive() {
+        mapValue.put("a", "b");
+        mapValue.put("c", new ArrayList<Object>());
+        JsonValueMap map = new JsonValueMap(mapValue);
+        Set<String> keys = map.keySet();
+        Collection<Object> values = map.values();
+        Set<Map.Entry<String, Object>> entries = map.entrySet();
+        mapValue.put("d", "e");
+        assertThat(keys.size()).isEqualTo(3);
+        assertThat(values.contains("e")).isTrue();
+        for (Map.Entry<String, Object> entry : entries) {
+            if (entry.getKey().equals("c")) {
+                assertThat(entry.getValue()).isInstanceOf(JsonValueList.class);
+            } else if (entry.getKey().equals("a")) {
+                entry.setValue("f");
+            }
+        }
+        assertThat(mapValue.get("a").getObject()).isEqualTo("f");
+        keys.remove("d");
+        assertThat(mapValue.isDefined("d")).isFalse();
+        assertThat(mapValue.keys().contains("c")).isTrue();
+    }
+
+    @Test
+    public void mapViewsSkipNonStringKeys() {
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("a", "b");
+        map.put(Integer.valueOf(1), "c");
+        map.put("d", "e");
+        JsonValue value = new JsonValue(map);
+        assertThat(value.keys().toString()).isEqualTo("[a, d]");
+        assertThat(value.keys().size()).isEqualTo(2);
+        assertThat(value.copy().keys().size()).isEqualTo(2);
+        int count = 0;
+        for (JsonValue member : value) {
+            assertThat(member.getPointer().toString().length()).isEqualTo(2);
+            count++;
+        }
+        assertThat(count).isEqualTo(2);
+        JsonValueMap view = new JsonValueMap(value);
+        for (Iterator<String> i = view.keySet().iterator(); i.hasNext();) {
+            if (i.next().equals("a")) {
+                i.remove();
+            }
+        }
+        assertThat(map.containsKey("a")).isFalse();
+        assertThat(map.containsKey(Integer.valueOf(1))).isTrue();
+    }
+
+    @Test
+    public void wrappersReusedUntilModified() {
+        mapValue.put("a", new HashMap<String, Object>());
+        mapValue.put("b", new ArrayList<Object>());
+        mapValue.get("b").put(0, new HashMap<String, Object>());
+        JsonValueMap map = new JsonValueMap(mapValue);
+        Object a = map.get("a");
+        assertThat(map.get("a")).isSameAs(a);
+        JsonValueList list = (JsonValueList)map.get("b");
+        Object element = list.get(0);
+        assertThat(list.get(0)).isSameAs(element);
+        list.set(0, new HashMap<String, Object>());
+        assertThat(list.get(0)).isNotSameAs(element);
+        map.put("a", new HashMap<String, Object>());
+        assertThat(map.get("a")).isNotSameAs(a);
+        a = map.get("a");
+        mapValue.put("a", new ArrayList<Object>()); // bypasses the wrapper
+        assertThat(map.get("a")).isInstanceOf(JsonValueList.class);
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions Copyrighted [year] [name of copyright owner]".
+ *
+ * Copyright © 2011 ForgeRock AS. All rights reserved.
+ */
+
+package org.forgerock.json.fluent;
+
+// Java SE
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// FEST-Assert
+import static org.fest.assertions.Assertions.assertThat;
+
+// TestNG
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link PersistentMap} and {@link PersistentList}.
+ */
+public class PersistentCollectionsTest {
+
+    // ----- map tests ----------
+
+    @Test
+    public void mapPlusMinus() {
+        HashMap<String, Object> expected = new HashMap<String, Object>();
+        PersistentMap map = PersistentMap.EMPTY;
+        for (int n = 0; n < 5000; n++) {
+            map = map.plus("k" + n, n);
+            expected.put("k" + n, n);
+        }
+        assertThat(map.size()).isEqualTo(5000);
+        assertThat((Object)map).isEqualTo(expected);
+        PersistentMap smaller = map;
+        for (int n = 0; n < 5000; n += 2) {
+            smaller = smaller.minus("k" + n);
+            expected.remove("k" + n);
+        }
+        assertThat((Object)smaller).isEqualTo(expected);
+        assertThat(map.size()).isEqualTo(5000);
+        assertThat(map.get("k0")).isEqualTo(0);
+    }
+
+    @Test
+    public void mapHashCollisions() {
+        // "Aa" and "BB" have identical hash codes
+        PersistentMap map = PersistentMap.EMPTY.plus("Aa", 1).plus("BB", 2).plus("C", 3);
+        assertThat(map.get("Aa")).isEqualTo(1);
+        assertThat(map.get("BB")).isEqualTo(2);
+        map = map.minus("Aa");
+        assertThat(map.containsKey("Aa")).isFalse();
+        assertThat(map.get("BB")).isEqualTo(2);
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void mapUnchangedReturnsSame() {
+        PersistentMap map = PersistentMap.EMPTY.plus("a", "b");
+        assertThat((Object)map.plus("a", "b")).isSameAs(map);
+        assertThat((Object)map.minus("c")).isSameAs(map);
+    }
+
+    @Test(expectedExceptions=UnsupportedOperationException.class)
+    public void mapIsImmutable() {
+        PersistentMap.EMPTY.put("a", "b");
+    }
+
+    // ----- list tests ----------
+
+    @Test
+    public void listPlusWith() {
+        ArrayList<Object> expected = new ArrayList<Object>();
+        PersistentList list = PersistentList.EMPTY;
+        for (int n = 0; n < 40000; n++) {
+            list = list.plus(n);
+            expected.add(n);
+        }
+        assertThat((Object)list).isEqualTo(expected);
+        PersistentList updated = list.with(1234, "x");
+        assertThat(updated.get(1234)).isEqualTo("x");
+        assertThat(list.get(1234)).isEqualTo(1234);
+    }
+
+    @Test
+    public void listMinus() {
+        List<Object> expected = new ArrayList<Object>();
+        PersistentList list = PersistentList.EMPTY;
+        for (int n = 0; n < 2000; n++) {
+            list = list.plus(n);
+            expected.add(n);
+        }
+        while (list.size() > 0) {
+            int index = (list.size() % 3 == 0 ? list.size() - 1 : list.size() / 2);
+            list = list.minus(index);
+            expected.remove(index);
+            assertThat(list.size()).isEqualTo(expected.size());
+        }
+        assertThat((Object)list).isEqualTo(expected);
+        assertThat((Object)PersistentList.EMPTY.plus("a").plus(0, "b")).isEqualTo(java.util.Arrays.asList("b", "a"));
+    }
+
+    // ----- JSON value tests ----------
+
+    @Test
+    public void withSharesUnchangedStructure() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", new HashMap<String, Object>());
+        map.put("b", new ArrayList<Object>());
+        JsonValue v1 = new JsonValue(map).persistentCopy();
+        JsonValue v2 = v1.with(new JsonPointer("/a/c"), "d");
+        JsonValue v3 = v2.with(new JsonPointer("/b/0"), "e").without(new JsonPointer("/a/c"));
+        assertThat(v1.get(new JsonPointer("/a/c"))).isNull();
+        assertThat(v2.get(new JsonPointer("/a/c")).asString()).isEqualTo("d");
+        assertThat(v2.get("b").getObject()).isSameAs(v1.get("b").getObject());
+        assertThat(v3.get(new JsonPointer("/b/0")).asString()).isEqualTo("e");
+        assertThat(v3.get(new JsonPointer("/a/c"))).isNull();
+        assertThat(v3.getObject()).isInstanceOf(PersistentMap.class);
+    }
+
+    @Test
+    public void withCopiesMutablePath() {
+        Map<String, Object> a = new HashMap<String, Object>();
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", a);
+        map.put("b", new ArrayList<Object>());
+        JsonValue value = new JsonValue(map);
+        JsonValue result = value.with(new JsonPointer("/a/c"), "d");
+        assertThat(a.containsKey("c")).isFalse();
+        assertThat(result.get(new JsonPointer("/a/c")).asString()).isEqualTo("d");
+        assertThat(result.get("b").getObject()).isSameAs(map.get("b"));
+    }
+
+    @Test(expectedExceptions=JsonValueException.class)
+    public void withMissingIntermediate() {
+        new JsonValue(new HashMap<String, Object>()).with(new JsonPointer("/a/b"), "c");
+    }
+
+    @Test
+    public void structuralEqualityOfVersions() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (int n = 0; n < 100; n++) {
+            List<Object> list = new ArrayList<Object>();
+            list.add("e" + n);
+            map.put("k" + n, list);
+        }
+        JsonValue v1 = new JsonValue(map).persistentCopy();
+        JsonValue v2 = v1.with(new JsonPointer("/k5/0"), "x");
+        JsonValue v3 = v2.with(new JsonPointer("/k5/0"), "e5");
+        assertThat(v1.getObject().hashCode()).isEqualTo(map.hashCode());
+        assertThat(StructuralEquality.equal(v1.getObject(), v2.getObject())).isFalse();
+        assertThat(StructuralEquality.equal(v1.getObject(), v3.getObject())).isTrue();
+        assertThat(StructuralEquality.equal(map, v3.getObject())).isTrue();
+        assertThat(new JsonValueMap(v3).equals(map)).isTrue();
+    }
+
+    @Test
+    public void structuralEqualityOfMutableGrandchild() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("a", "b");
+        JsonValue v1 = new JsonValue(map).persistentCopy();
+        List<Object> list = new ArrayList<Object>();
+        list.add("c");
+        JsonValue v2 = v1.with(new JsonPointer("/d"), PersistentMap.EMPTY.plus("e", list));
+        int hash = v2.getObject().hashCode();
+        list.add("f");
+        assertThat(v2.getObject().hashCode()).isNotEqualTo(hash);
+        List<Object> other = new ArrayList<Object>(list);
+        JsonValue v3 = v1.with(new JsonPointer("/d"), PersistentMap.EMPTY.plus("e", other));
+        assertThat(StructuralEquality.equal(v2.getObject(), v3.getObject())).isTrue();
+        other.add("g");
+        assertThat(StructuralEquality.equal(v2.getObject(), v3.getObject())).isFalse();
+    }
+
+    @Test
+    public void freezeSharesEqualSubtrees() {
+        List<Object> list = new ArrayList<Object>();
+        for (int n = 0; n < 10; n++) {
+            Map<String, Object> address = new HashMap<String, Object>();
+            address.put("city", "Bristol");
+            address.put("tags", new ArrayList<Object>());
+            Map<String, Object> member = new HashMap<String, Object>();
+            member.put("id", n % 2);
+            member.put("address", address);
+            list.add(member);
+        }
+        JsonFreezer freezer = new JsonFreezer();
+        JsonValue frozen = freezer.freeze(new JsonValue(list));
+        assertThat(frozen.getObject()).isEqualTo(list);
+        assertThat(frozen.get(new JsonPointer("/0/address")).getObject())
+         .isSameAs(frozen.get(new JsonPointer("/9/address")).getObject());
+        assertThat(frozen.get(0).getObject()).isSameAs(frozen.get(2).getObject());
+        assertThat(frozen.get(0).getObject()).isNotSameAs(frozen.get(1).getObject());
+        assertThat(freezer.getNodeCount()).isEqualTo(31);
+        assertThat(freezer.getSharedCount()).isEqualTo(26);
+    }
+}